@@ -0,0 +1,100 @@
+package sim.app.firecontrol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Task and cell auctions (UAV.selectTask and UAV.selectCell) and the flooding rounds
+ * they are made of, for growing teams of agents.
+ *
+ * The auctions are private to UAV: they are driven through UAV.step, after putting the
+ * auctioneer in the state that makes it choose SELECT_TASK or SELECT_CELL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AuctionBenchmark {
+	@Param({"2", "20", "200", "2000"})
+	public int numUAVs;
+
+	@Param({"30"})
+	public double communicationRange;
+
+	private Ignite ignite;
+	private UAV auctioneer;
+	private Task task;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		ignite = new Ignite(BenchmarkWorlds.SEED);
+		ignite.communicationRange = communicationRange;
+		ignite.numUAVs = numUAVs;
+		ignite.writeReport = false;
+		ignite.eventDrivenTravel = false;
+		ignite.start();
+		auctioneer = (UAV) ignite.UAVs.get(0);
+		task = ignite.tasks.get(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		ignite.finish();
+	}
+
+	@Setup(Level.Invocation)
+	public void resetAgents(){
+		BenchmarkWorlds.resetAgents(ignite);
+	}
+
+	@Benchmark
+	public UAV selectTask(){
+		auctioneer.step(ignite);
+		return auctioneer;
+	}
+
+	@Benchmark
+	public UAV selectCell(){
+		for(Object obj : ignite.UAVs){
+			((UAV) obj).myTask = task;
+		}
+		auctioneer.step(ignite);
+		return auctioneer;
+	}
+
+	/**
+	 * Announcement of the tasks flooded over the network and bids flooded back.
+	 */
+	@Benchmark
+	public TaskDataPacket floodTaskAnnouncement(){
+		auctioneer.taskReceiveData(new TaskDataPacket(auctioneer, PacketType.ANNOUNCEMENT, ignite.UAVs, ignite.tasks));
+		return auctioneer.taskPacket;
+	}
+
+	/**
+	 * Announcement of the cells of a task flooded over the network and bids flooded back.
+	 */
+	@Benchmark
+	public CellDataPacket floodCellAnnouncement(){
+		for(Object obj : ignite.UAVs){
+			((UAV) obj).myTask = task;
+		}
+		auctioneer.cellReceiveData(new CellDataPacket(auctioneer, task, PacketType.ANNOUNCEMENT, ignite.UAVs));
+		return auctioneer.cellPacket;
+	}
+}
@@ -0,0 +1,45 @@
+package sim.app.firecontrol;
+
+/**
+ * Worlds shared by the benchmarks. Runs are headless (no report) and agents are
+ * stepped every step, so that benchmarks can drive them directly.
+ */
+class BenchmarkWorlds {
+	static final long SEED = 42;
+
+	static Ignite create(int size, int numUAVs, int numFires){
+		return create(size, numUAVs, numFires, "dense");
+	}
+
+	/**
+	 * @param layout of the forest: dense (ObjectGrid2D), sparse, offheap or morton (see Ignite.createStore)
+	 */
+	static Ignite create(int size, int numUAVs, int numFires, String layout){
+		Ignite ignite = new Ignite(SEED);
+		ignite.width = size;
+		ignite.height = size;
+		ignite.numUAVs = numUAVs;
+		ignite.numFires = numFires;
+		ignite.writeReport = false;
+		ignite.eventDrivenTravel = false;
+		ignite.sparseForest = layout.equals("sparse");
+		ignite.offHeapForest = layout.equals("offheap");
+		ignite.mortonForest = layout.equals("morton");
+		ignite.start();
+		return ignite;
+	}
+
+	/**
+	 * Put all the agents back in the state they have before their first auction.
+	 */
+	static void resetAgents(Ignite ignite){
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			uav.myTask = null;
+			uav.target = null;
+			uav.taskPacket = null;
+			uav.cellPacket = null;
+			uav.soldCells.clear();
+		}
+	}
+}
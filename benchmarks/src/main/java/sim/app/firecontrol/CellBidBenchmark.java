@@ -0,0 +1,62 @@
+package sim.app.firecontrol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sim.util.Double3D;
+import sim.util.Int2D;
+
+/**
+ * Bids of one agent over all the cells of a task (CellBid.addBids), for growing tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CellBidBenchmark {
+	//cells on fire in the task
+	@Param({"10", "100", "1000", "10000"})
+	public int taskCells;
+
+	//part of the task already sold to other agents
+	@Param({"0", "0.5"})
+	public double soldRatio;
+
+	private UAV bidder;
+	private Task task;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		Ignite ignite = BenchmarkWorlds.create(60, 1, 0);
+		int side = (int) Math.ceil(Math.sqrt(taskCells));
+		task = new Task(new Int2D(side/2, side/2), side/2);
+		bidder = new UAV(0, new Double3D(side, side, 1), ignite);
+		for(int c=0; c<taskCells; c++){
+			WorldCell cell = new WorldCell(c / side, c % side, CellType.FIRE);
+			task.addCell(cell);
+			if(c < soldRatio * taskCells){
+				bidder.soldCells.add(cell);
+			}
+		}
+	}
+
+	@Benchmark
+	public CellBid addBids(){
+		//the constructor bids over all the cells of the task
+		return new CellBid(bidder, task);
+	}
+}
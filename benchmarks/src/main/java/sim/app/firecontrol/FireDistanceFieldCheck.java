@@ -0,0 +1,103 @@
+package sim.app.firecontrol;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Regression check of the incremental updates of FireDistanceField against brute force.
+ * Fires are added and removed at random, in clusters as the fire spread does, and after
+ * each change every cell has to point to a cell still on fire, at the distance it reports.
+ * The process exits with status 1 at the first state that fails.
+ *
+ * Usage:
+ *   java -cp benchmarks/target/benchmarks.jar sim.app.firecontrol.FireDistanceFieldCheck
+ *        -size 60 -changes 90000 -seed 1
+ */
+public class FireDistanceFieldCheck {
+
+	public static void main(String[] args){
+		int size = 60;
+		int changes = 90000;
+		long seed = 1;
+		for(int i=0; i+1<args.length; i+=2){
+			String value = args[i+1];
+			switch(args[i]){
+				case "-size": size = Integer.parseInt(value); break;
+				case "-changes": changes = Integer.parseInt(value); break;
+				case "-seed": seed = Long.parseLong(value); break;
+				default:
+					System.err.println("Unknown option " + args[i]);
+					System.exit(-1);
+			}
+		}
+
+		Random random = new Random(seed);
+		FireDistanceField field = new FireDistanceField(size, size);
+		boolean[] burning = new boolean[size * size];
+		ArrayList<Integer> fires = new ArrayList<>();
+		//states where a cell got a fire farther than the closest one (allowed, see FireDistanceField)
+		int farther = 0;
+		for(int c=0; c<changes; c++){
+			//add near an existing fire most of the times, keep a few dozens of fires alive
+			boolean add = fires.isEmpty() || (fires.size() < 80 && random.nextInt(100) < 55);
+			if(add){
+				int x, y;
+				if(!fires.isEmpty() && random.nextInt(10) > 0){
+					int from = fires.get(random.nextInt(fires.size()));
+					x = Math.min(size - 1, Math.max(0, from / size + random.nextInt(5) - 2));
+					y = Math.min(size - 1, Math.max(0, from % size + random.nextInt(5) - 2));
+				} else {
+					x = random.nextInt(size);
+					y = random.nextInt(size);
+				}
+				if(burning[x * size + y]){
+					continue;
+				}
+				burning[x * size + y] = true;
+				fires.add(x * size + y);
+				field.addFire(x, y);
+			} else {
+				int index = fires.remove(random.nextInt(fires.size()));
+				burning[index] = false;
+				field.removeFire(index / size, index % size);
+			}
+
+			boolean exact = true;
+			for(int x=0; x<size; x++){
+				for(int y=0; y<size; y++){
+					int nearest = field.nearestIndex(x, y);
+					if(fires.isEmpty()){
+						if(nearest != FireDistanceField.NONE){
+							fail(c, x, y, "points to " + nearest + " with no fires");
+						}
+						continue;
+					}
+					if(nearest == FireDistanceField.NONE || !burning[nearest]){
+						fail(c, x, y, "points to " + nearest + " that is not on fire");
+					}
+					int dx = nearest / size - x;
+					int dy = nearest % size - y;
+					if(field.distance(x, y) != Math.sqrt(dx * dx + dy * dy)){
+						fail(c, x, y, "reports distance " + field.distance(x, y) + " from " + nearest);
+					}
+					int best = Integer.MAX_VALUE;
+					for(int fire : fires){
+						int fx = fire / size - x;
+						int fy = fire % size - y;
+						best = Math.min(best, fx * fx + fy * fy);
+					}
+					exact &= best == dx * dx + dy * dy;
+				}
+			}
+			if(!exact){
+				farther++;
+			}
+		}
+		System.out.println("states=" + changes + " ok, with a farther fire than the closest one=" + farther);
+	}
+
+	private static void fail(int change, int x, int y, String message){
+		System.err.println("change " + change + ": cell " + x + "," + y + " " + message);
+		System.exit(1);
+	}
+}
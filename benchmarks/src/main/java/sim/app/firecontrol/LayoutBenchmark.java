@@ -0,0 +1,90 @@
+package sim.app.firecontrol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same world with the forest laid out as ObjectGrid2D (dense, one array of WorldCell per column),
+ * as primitive columns (offheap) and as Morton ordered tiles with a ghost border (morton).
+ * Fires are grown for a while before the first iteration, so that the fire spreading stencil matters,
+ * and they keep growing during the trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LayoutBenchmark {
+	@Param({"dense", "offheap", "morton"})
+	public String layout;
+
+	@Param({"250", "1000", "2000"})
+	public int size;
+
+	private Ignite ignite;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		ignite = BenchmarkWorlds.create(size, 0, size / 5, layout);
+		for(int s=0; s<100; s++){
+			stepCells();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		ignite.finish();
+	}
+
+	/**
+	 * One step of all the cells, as the schedule does at each step.
+	 */
+	@Benchmark
+	public int stepCells(){
+		if(ignite.store != null){
+			ignite.store.step(ignite);
+		} else {
+			Object[][] field = ignite.forest.field;
+			for(int w=0; w<ignite.width; w++){
+				for(int h=0; h<ignite.height; h++){
+					((WorldCell) field[w][h]).step(ignite);
+				}
+			}
+		}
+		return ignite.cellsOnFire;
+	}
+
+	/**
+	 * Scan of the whole world for the cells on fire.
+	 */
+	@Benchmark
+	public long countFires(){
+		if(ignite.store != null){
+			return ignite.store.count(CellType.FIRE);
+		}
+		long count = 0;
+		Object[][] field = ignite.forest.field;
+		for(int w=0; w<ignite.width; w++){
+			for(int h=0; h<ignite.height; h++){
+				if(((WorldCell) field[w][h]).getType().equals(CellType.FIRE)){
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * End-to-end scalability benchmark with regression gating.
+ * It runs headless simulations at fixed seeds over a grid of map sizes, UAV counts and
+ * fire counts and, for every point of the grid, records the throughput (steps per second),
+ * the time to extinction, the peak heap and the allocation rate (per second and per step).
+ * The results are written to a csv file and compared with a baseline written by a
+ * previous run (the same csv format): the process exits with status 1 when any point
+ * regresses beyond the tolerance.
+ *
+ * Usage:
+ *   java -cp benchmarks/target/benchmarks.jar sim.app.firecontrol.ScalabilityHarness
+ *        -size 60,250,1000 -uavs 2,20,200 -fires 5,50 -seeds 1,2,3 -maxsteps 20000
+ *        -warmup 2 -tolerance 0.15 -baseline baseline.csv -out scalability.csv
+ *
+ * To accept the current numbers as the new baseline, copy the output file over the baseline.
+ */
+
+package sim.app.firecontrol;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class ScalabilityHarness {
+
+	/* the outcome of a point of the grid, averaged over the seeds */
+	public static class Point {
+		public int size;
+		public int numUAVs;
+		public int numFires;
+		public double stepsPerSecond;
+		public double stepsToExtinction; //mean over the seeds, maxSteps for runs that did not end
+		public double millisToExtinction;
+		public double peakHeapMB;
+		public double allocationMBPerSecond;
+		public double allocationKBPerStep; //what is gated, the rate also grows when the simulation gets faster
+
+		public String key(){
+			return size + "," + numUAVs + "," + numFires;
+		}
+
+		public String toCsv(){
+			return key() + String.format(Locale.US, ",%.2f,%.1f,%.1f,%.2f,%.2f,%.3f", stepsPerSecond,
+					stepsToExtinction, millisToExtinction, peakHeapMB, allocationMBPerSecond, allocationKBPerStep);
+		}
+
+		public static Point fromCsv(String line){
+			String[] v = line.split(",");
+			Point p = new Point();
+			p.size = Integer.parseInt(v[0]);
+			p.numUAVs = Integer.parseInt(v[1]);
+			p.numFires = Integer.parseInt(v[2]);
+			p.stepsPerSecond = Double.parseDouble(v[3]);
+			p.stepsToExtinction = Double.parseDouble(v[4]);
+			p.millisToExtinction = Double.parseDouble(v[5]);
+			p.peakHeapMB = Double.parseDouble(v[6]);
+			p.allocationMBPerSecond = Double.parseDouble(v[7]);
+			p.allocationKBPerStep = Double.parseDouble(v[8]);
+			return p;
+		}
+	}
+
+	public static final String CSV_HEADER =
+			"size,numUAVs,numFires,stepsPerSecond,stepsToExtinction,millisToExtinction,peakHeapMB,allocationMBPerSecond,allocationKBPerStep";
+
+	public int[] sizes = {60, 250};
+	public int[] uavs = {2, 20};
+	public int[] fires = {5};
+	public int[] seeds = {1, 2, 3};
+	public long maxSteps = 20000;
+	public int warmup = 1;
+	public double tolerance = 0.15;
+	public String baseline = null;
+	public String out = "scalability.csv";
+
+	private final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Run all the seeds of a point of the grid, one after the other on this thread.
+	 */
+	public Point measure(int size, int numUAVs, int numFires){
+		Point point = new Point();
+		point.size = size;
+		point.numUAVs = numUAVs;
+		point.numFires = numFires;
+
+		long steps = 0;
+		long nanos = 0;
+		long allocated = 0;
+		long peak = 0;
+		for(int seed : seeds){
+			Ignite ignite = new Ignite(seed);
+			ignite.width = size;
+			ignite.height = size;
+			ignite.numUAVs = numUAVs;
+			ignite.numFires = numFires;
+			ignite.writeReport = false;
+
+			System.gc();
+			resetPeakHeap();
+			long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			ignite.start();
+			long start = System.nanoTime();
+			while(ignite.schedule.getSteps() < maxSteps && ignite.schedule.step(ignite));
+			long elapsed = System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+			peak = Math.max(peak, peakHeap());
+
+			steps += ignite.schedule.getSteps();
+			nanos += elapsed;
+			point.stepsToExtinction += ignite.schedule.getSteps();
+			point.millisToExtinction += elapsed / 1e6;
+			ignite.finish();
+		}
+
+		point.stepsPerSecond = nanos == 0 ? 0 : steps * 1e9 / nanos;
+		point.stepsToExtinction /= seeds.length;
+		point.millisToExtinction /= seeds.length;
+		point.peakHeapMB = peak / (1024.0 * 1024.0);
+		point.allocationMBPerSecond = nanos == 0 ? 0 : allocated / (1024.0 * 1024.0) * 1e9 / nanos;
+		point.allocationKBPerStep = steps == 0 ? 0 : allocated / 1024.0 / steps;
+		return point;
+	}
+
+	/**
+	 * Measure the whole grid, write the results and compare them with the baseline.
+	 * @return the number of regressed points
+	 */
+	public int runAll() throws IOException {
+		//let the JIT compile the hot paths before measuring
+		for(int w=0; w<warmup; w++){
+			measure(sizes[0], uavs[0], fires[0]);
+		}
+
+		List<Point> points = new ArrayList<>();
+		try(BufferedWriter writer = new BufferedWriter(new FileWriter(out))){
+			writer.write(CSV_HEADER);
+			writer.newLine();
+			for(int s : sizes){
+				for(int u : uavs){
+					for(int f : fires){
+						Point point = measure(s, u, f);
+						points.add(point);
+						writer.write(point.toCsv());
+						writer.newLine();
+						writer.flush();
+						System.err.println(point.toCsv());
+					}
+				}
+			}
+		}
+
+		if(baseline == null){
+			return 0;
+		}
+		if(!new File(baseline).exists()){
+			System.err.println("No baseline " + baseline + ", copy " + out + " to create it");
+			return 0;
+		}
+		return compare(points, readBaseline(baseline));
+	}
+
+	/**
+	 * Report every point worse than the baseline beyond the tolerance: slower, longer to
+	 * extinguish the fires, or using more memory. Points missing from the baseline are skipped.
+	 */
+	public int compare(List<Point> points, Map<String, Point> base){
+		int regressions = 0;
+		for(Point p : points){
+			Point b = base.get(p.key());
+			if(b == null){
+				continue;
+			}
+			boolean regressed = false;
+			regressed |= check(p, "stepsPerSecond", p.stepsPerSecond, b.stepsPerSecond, false);
+			regressed |= check(p, "millisToExtinction", p.millisToExtinction, b.millisToExtinction, true);
+			regressed |= check(p, "peakHeapMB", p.peakHeapMB, b.peakHeapMB, true);
+			regressed |= check(p, "allocationKBPerStep", p.allocationKBPerStep, b.allocationKBPerStep, true);
+			if(p.stepsToExtinction != b.stepsToExtinction){
+				//same seeds, different dynamics: not a performance regression but worth knowing
+				System.err.println("CHANGED " + p.key() + " stepsToExtinction " + b.stepsToExtinction + " -> " + p.stepsToExtinction);
+			}
+			if(regressed){
+				regressions++;
+			}
+		}
+		System.err.println(regressions + "/" + points.size() + " points regressed (tolerance " + tolerance + ")");
+		return regressions;
+	}
+
+	private boolean check(Point p, String metric, double value, double base, boolean lowerIsBetter){
+		boolean regressed = lowerIsBetter ? value > base * (1 + tolerance) : value < base * (1 - tolerance);
+		if(regressed){
+			System.err.println(String.format(Locale.US, "REGRESSION %s %s %.2f -> %.2f", p.key(), metric, base, value));
+		}
+		return regressed;
+	}
+
+	public static Map<String, Point> readBaseline(String file) throws IOException {
+		Map<String, Point> ret = new HashMap<>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))){
+			String line = reader.readLine(); //header
+			while((line = reader.readLine()) != null){
+				if(!line.isEmpty()){
+					Point p = Point.fromCsv(line);
+					ret.put(p.key(), p);
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static void resetPeakHeap(){
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap(){
+		long ret = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				ret += pool.getPeakUsage().getUsed();
+			}
+		}
+		return ret;
+	}
+
+	public static void main(String[] args) throws IOException {
+		ScalabilityHarness harness = new ScalabilityHarness();
+		for(int i=0; i+1<args.length; i+=2){
+			String value = args[i+1];
+			switch(args[i]){
+				case "-size": harness.sizes = BatchRunner.parseInts(value); break;
+				case "-uavs": harness.uavs = BatchRunner.parseInts(value); break;
+				case "-fires": harness.fires = BatchRunner.parseInts(value); break;
+				case "-seeds": harness.seeds = BatchRunner.parseInts(value); break;
+				case "-maxsteps": harness.maxSteps = Long.parseLong(value); break;
+				case "-warmup": harness.warmup = Integer.parseInt(value); break;
+				case "-tolerance": harness.tolerance = Double.parseDouble(value); break;
+				case "-baseline": harness.baseline = value; break;
+				case "-out": harness.out = value; break;
+				default:
+					System.err.println("Unknown option " + args[i]);
+					System.exit(-1);
+			}
+		}
+		System.exit(harness.runAll() > 0 ? 1 : 0);
+	}
+}
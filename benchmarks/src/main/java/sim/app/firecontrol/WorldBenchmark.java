@@ -0,0 +1,69 @@
+package sim.app.firecontrol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * World generation (Ignite.start) and one sweep of WorldCell.step over the whole grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorldBenchmark {
+	@Param({"60", "250", "1000", "4000"})
+	public int size;
+
+	private Ignite ignite;
+
+	@Setup(Level.Iteration)
+	public void setup(){
+		ignite = BenchmarkWorlds.create(size, 2, 5);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown(){
+		ignite.finish();
+	}
+
+	/**
+	 * Each world is finished as well, otherwise the worlds of all the invocations stay registered
+	 * (see PhaseStats) and pile up in the heap.
+	 */
+	@Benchmark
+	public Ignite start(){
+		Ignite world = BenchmarkWorlds.create(size, 2, 5);
+		world.finish();
+		return world;
+	}
+
+	/**
+	 * Every cell is stepped once, as the schedule does at each step.
+	 * Fires keep spreading during an iteration, the world is regenerated at the next one.
+	 */
+	@Benchmark
+	public int stepCells(){
+		Object[][] field = ignite.forest.field;
+		for(int w=0; w<ignite.width; w++){
+			for(int h=0; h<ignite.height; h++){
+				((WorldCell) field[w][h]).step(ignite);
+			}
+		}
+		return ignite.cellsOnFire;
+	}
+}
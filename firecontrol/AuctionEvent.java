@@ -0,0 +1,58 @@
+package sim.app.firecontrol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for an auction round (task or cell), from the announcement to the
+ * last awarding message. Disabled unless the recording uses firecontrol.jfc.
+ */
+@Name("sim.app.firecontrol.Auction")
+@Label("Auction")
+@Category({"Fire Control", "Protocol"})
+@Description("A task or cell auction, from the announcement to the awards")
+@Enabled(false)
+public class AuctionEvent extends Event {
+	@Label("Type")
+	@Description("TASK or CELL")
+	public String type;
+
+	@Label("Initiator")
+	@Description("Id of the UAV that started the auction")
+	public int initiator;
+
+	@Label("Participants")
+	@Description("UAVs reached by the announcement")
+	public int participants;
+
+	@Label("Bidders")
+	public int bidders;
+
+	@Label("Hops")
+	@Description("Messages sent during the auction")
+	public long hops;
+
+	@Label("Step")
+	public long step;
+
+	/**
+	 * End the auction started with begin() and commit it, if the recording wants it.
+	 * @param messagesBefore Ignite.messagesSent when the auction started
+	 */
+	public void finish(String type, UAV initiator, int participants, int bidders, long messagesBefore){
+		end();
+		if(shouldCommit()){
+			this.type = type;
+			this.initiator = initiator.id;
+			this.participants = participants;
+			this.bidders = bidders;
+			this.hops = initiator.ignite.messagesSent - messagesBefore;
+			this.step = initiator.ignite.currentStep();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/**
+ * Headless runner for parameter sweeps.
+ * It takes a grid of parameters and a number of replications, runs all the resulting
+ * simulations concurrently on a thread pool (each one with its own Ignite instance and
+ * its own seed) and streams the outcome of every run into a single csv file.
+ *
+ * Usage:
+ *   java sim.app.firecontrol.BatchRunner -uavs 2,4,8 -range 10,30 -fires 5 -size 60,120
+ *        -reps 10 -threads 4 -seed 1 -maxsteps 100000 -out results.csv
+ *
+ * Every list parameter accepts comma separated values, the grid is their cartesian product.
+ */
+
+package sim.app.firecontrol;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchRunner {
+
+	/* a single point of the parameter grid */
+	public static class RunConfig {
+		public int numUAVs;
+		public double communicationRange;
+		public int numFires;
+		public int size;
+		public int replication;
+		public long seed;
+
+		public String toCsv(){
+			return numUAVs + "," + communicationRange + "," + numFires + "," + size + "," + replication + "," + seed;
+		}
+	}
+
+	/* the outcome of a single run */
+	public static class RunResult {
+		public RunConfig config;
+		public boolean extinguished; //false if the run hit maxSteps
+		public long steps;
+		public int cellsBurned;
+		public int cellsSaved;
+		public long messagesSent;
+		public long millis;
+		public DecisionLatencies latencies;
+
+		public String toCsv(){
+			return config.toCsv() + "," + extinguished + "," + steps + "," + cellsBurned + ","
+					+ cellsSaved + "," + messagesSent + "," + millis;
+		}
+	}
+
+	public static final String CSV_HEADER =
+			"numUAVs,communicationRange,numFires,size,replication,seed,extinguished,steps,cellsBurned,cellsSaved,messagesSent,millis";
+
+	public int[] uavs = {2};
+	public double[] ranges = {30};
+	public int[] fires = {5};
+	public int[] sizes = {60};
+	public int replications = 1;
+	public int threads = Runtime.getRuntime().availableProcessors();
+	public long seed = System.currentTimeMillis();
+	public long maxSteps = 100000;
+	public String out = "results.csv";
+
+	/**
+	 * Build the list of runs: the cartesian product of the grid times the replications.
+	 * Each run gets its own seed, derived from the base seed and the index of the run.
+	 */
+	public List<RunConfig> grid(){
+		List<RunConfig> runs = new ArrayList<>();
+		for(int s : sizes){
+			for(int u : uavs){
+				for(double r : ranges){
+					for(int f : fires){
+						for(int rep=0; rep<replications; rep++){
+							RunConfig config = new RunConfig();
+							config.size = s;
+							config.numUAVs = u;
+							config.communicationRange = r;
+							config.numFires = f;
+							config.replication = rep;
+							config.seed = runSeed(seed, runs.size());
+							runs.add(config);
+						}
+					}
+				}
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Run a single headless simulation until all the fires are gone or maxSteps is reached.
+	 */
+	public static RunResult run(RunConfig config, long maxSteps){
+		long start = System.currentTimeMillis();
+
+		Ignite ignite = new Ignite(config.seed);
+		ignite.numUAVs = config.numUAVs;
+		ignite.communicationRange = config.communicationRange;
+		ignite.numFires = config.numFires;
+		ignite.width = config.size;
+		ignite.height = config.size;
+		ignite.writeReport = false;
+
+		RunResult result = new RunResult();
+		try {
+			ignite.start();
+			while(ignite.schedule.getSteps() < maxSteps && ignite.schedule.step(ignite));
+
+			result.config = config;
+			result.extinguished = ignite.cellsOnFire == 0;
+			result.steps = ignite.schedule.getSteps();
+			result.cellsBurned = ignite.cellsBurned;
+			result.cellsSaved = ignite.cellsSaved();
+			result.messagesSent = ignite.messagesSent;
+			result.latencies = ignite.latencies;
+		} finally {
+			//a failed run is released as well (JMX registration, metrics)
+			ignite.finish();
+		}
+
+		result.millis = System.currentTimeMillis() - start;
+		return result;
+	}
+
+	/**
+	 * Run the whole grid on a pool of threads, writing each result as soon as it is available.
+	 * The decision latencies of all the runs are merged and written to <out>.latency.txt
+	 */
+	public void runAll() throws IOException, InterruptedException {
+		final List<RunConfig> runs = grid();
+		final long start = System.currentTimeMillis();
+		final AtomicInteger done = new AtomicInteger();
+		final DecisionLatencies latencies = new DecisionLatencies();
+
+		try(final BufferedWriter writer = new BufferedWriter(new FileWriter(out))){
+			writer.write(CSV_HEADER);
+			writer.newLine();
+
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			for(final RunConfig config : runs){
+				pool.execute(new Runnable(){
+					public void run(){
+						RunResult result;
+						try {
+							result = BatchRunner.run(config, maxSteps);
+						} catch(RuntimeException e) {
+							System.err.println("Exception in BatchRunner.run() " + config.toCsv() + " " + e.toString());
+							e.printStackTrace();
+							return;
+						}
+						synchronized(writer){
+							try {
+								writer.write(result.toCsv());
+								writer.newLine();
+								writer.flush();
+							} catch (IOException e) {
+								System.err.println("Exception in BatchRunner.runAll() " + e.toString());
+							}
+						}
+						synchronized(latencies){
+							latencies.add(result.latencies);
+						}
+						progress(done.incrementAndGet(), runs.size(), start);
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		try(BufferedWriter writer = new BufferedWriter(new FileWriter(out + ".latency.txt"))){
+			writer.write(latencies.report());
+		}
+	}
+
+	private static void progress(int done, int total, long start){
+		double minutes = (System.currentTimeMillis() - start) / 60000.0;
+		System.err.println(String.format(Locale.US, "%d/%d runs completed, %.1f runs/min",
+				done, total, minutes > 0 ? done / minutes : 0));
+	}
+
+	/**
+	 * Seed of the i-th run, a SplitMix64 step so that close indexes give unrelated seeds.
+	 */
+	public static long runSeed(long base, int index){
+		return RandomStreams.mix(base + (index + 1) * 0x9E3779B97F4A7C15L);
+	}
+
+	static int[] parseInts(String list){
+		String[] tokens = list.split(",");
+		int[] ret = new int[tokens.length];
+		for(int i=0; i<tokens.length; i++){
+			ret[i] = Integer.parseInt(tokens[i].trim());
+		}
+		return ret;
+	}
+
+	static double[] parseDoubles(String list){
+		String[] tokens = list.split(",");
+		double[] ret = new double[tokens.length];
+		for(int i=0; i<tokens.length; i++){
+			ret[i] = Double.parseDouble(tokens[i].trim());
+		}
+		return ret;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		BatchRunner runner = new BatchRunner();
+		for(int i=0; i+1<args.length; i+=2){
+			String value = args[i+1];
+			switch(args[i]){
+				case "-uavs": runner.uavs = parseInts(value); break;
+				case "-range": runner.ranges = parseDoubles(value); break;
+				case "-fires": runner.fires = parseInts(value); break;
+				case "-size": runner.sizes = parseInts(value); break;
+				case "-reps": runner.replications = Integer.parseInt(value); break;
+				case "-threads": runner.threads = Integer.parseInt(value); break;
+				case "-seed": runner.seed = Long.parseLong(value); break;
+				case "-maxsteps": runner.maxSteps = Long.parseLong(value); break;
+				case "-out": runner.out = value; break;
+				default:
+					System.err.println("Unknown option " + args[i]);
+					System.exit(-1);
+			}
+		}
+		runner.runAll();
+		System.exit(0);
+	}
+}
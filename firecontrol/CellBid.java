@@ -50,6 +50,20 @@ public class CellBid {
         this.addBids(fire);
     }
 
+    /**
+     * Copy of a bid made earlier by the same bidder (see UAV.decide), without the cells
+     * sold to or extinguished by others in the meantime.
+     */
+    public CellBid(CellBid planned) {
+        this.bidder = planned.bidder;
+        this.bids = new PriorityQueue(Math.max(1, planned.bids.size()), new BidComparator());
+        for(Object obj: planned.bids) {
+            Bid bid = (Bid) obj;
+            if(bid.cell.getType().equals(CellType.FIRE) && !bidder.soldCells.contains(bid.cell))
+                this.bids.offer(bid);
+        }
+    }
+
     public void addBids(Task fire) {
         double uavTheta = Math.atan2(bidder.y - fire.centroid.y, bidder.x - fire.centroid.x);
         Double2D centroid = new Double2D(fire.centroid.x, fire.centroid.y);
@@ -0,0 +1,159 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+
+/**
+ * Number of cells of each type in any rectangle of the world, kept up to date at each change
+ * of type (see Ignite.notifyTypeChange).
+ *
+ * The world is split in blocks of BLOCK x BLOCK cells and, for each type, a 2D Fenwick tree holds
+ * the number of cells of that type in each block: a change is an O(log^2) update and the blocks
+ * fully inside a rectangle are summed in O(log^2), only the cells of the partial blocks on the border
+ * of the rectangle are read one by one. Blocks keep the trees small (a tree per cell and type would
+ * take more memory than the forest itself).
+ */
+public class CellCountIndex {
+	public static final int BLOCK = 8;
+
+	private final int width;
+	private final int height;
+	//blocks along x and y
+	private final int blocksX;
+	private final int blocksY;
+	//one Fenwick tree for each type, (blocksX+1)*(blocksY+1) with 1-based indexes
+	private final int[][] trees;
+
+	public CellCountIndex(int width, int height){
+		this.width = width;
+		this.height = height;
+		this.blocksX = (width + BLOCK - 1) / BLOCK;
+		this.blocksY = (height + BLOCK - 1) / BLOCK;
+		this.trees = new int[CellType.values().length][(blocksX + 1) * (blocksY + 1)];
+	}
+
+	/**
+	 * Count again all the cells of the forest of the simulation, in O(cells).
+	 */
+	public void rebuild(Ignite ignite){
+		for(int[] tree : trees){
+			Arrays.fill(tree, 0);
+		}
+		for(int x=0; x<width; x++){
+			for(int y=0; y<height; y++){
+				trees[ignite.typeAt(x, y).ordinal()][(x / BLOCK + 1) * (blocksY + 1) + y / BLOCK + 1]++;
+			}
+		}
+		//linear construction of the trees from the counts, along y and then along x
+		for(int[] tree : trees){
+			for(int i=1; i<=blocksX; i++){
+				for(int j=1; j<=blocksY; j++){
+					int parent = j + (j & -j);
+					if(parent <= blocksY){
+						tree[i * (blocksY + 1) + parent] += tree[i * (blocksY + 1) + j];
+					}
+				}
+			}
+			for(int i=1; i<=blocksX; i++){
+				int parent = i + (i & -i);
+				if(parent <= blocksX){
+					for(int j=1; j<=blocksY; j++){
+						tree[parent * (blocksY + 1) + j] += tree[i * (blocksY + 1) + j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called when the cell at x,y changes its type from previous to type.
+	 */
+	public void update(int x, int y, CellType previous, CellType type){
+		add(trees[previous.ordinal()], x / BLOCK, y / BLOCK, -1);
+		add(trees[type.ordinal()], x / BLOCK, y / BLOCK, 1);
+	}
+
+	/**
+	 * @return the number of cells of the given type in the world
+	 */
+	public int count(CellType type){
+		return prefix(trees[type.ordinal()], blocksX, blocksY);
+	}
+
+	/**
+	 * @return the number of cells of the given type with x0 <= x < x1 and y0 <= y < y1,
+	 * the rectangle is clipped to the world
+	 */
+	public int count(Ignite ignite, CellType type, int x0, int y0, int x1, int y1){
+		x0 = Math.max(x0, 0);
+		y0 = Math.max(y0, 0);
+		x1 = Math.min(x1, width);
+		y1 = Math.min(y1, height);
+		if(x0 >= x1 || y0 >= y1){
+			return 0;
+		}
+		//blocks fully inside the rectangle (the last ones may be smaller than BLOCK at the border of the world)
+		int bx0 = (x0 + BLOCK - 1) / BLOCK;
+		int by0 = (y0 + BLOCK - 1) / BLOCK;
+		int bx1 = x1 == width ? blocksX : x1 / BLOCK;
+		int by1 = y1 == height ? blocksY : y1 / BLOCK;
+		int count = 0;
+		int ix0 = x0, ix1 = x0, iy0 = y0, iy1 = y0;
+		if(bx0 < bx1 && by0 < by1){
+			int[] tree = trees[type.ordinal()];
+			count = prefix(tree, bx1, by1) - prefix(tree, bx0, by1) - prefix(tree, bx1, by0) + prefix(tree, bx0, by0);
+			ix0 = bx0 * BLOCK;
+			ix1 = Math.min(bx1 * BLOCK, width);
+			iy0 = by0 * BLOCK;
+			iy1 = Math.min(by1 * BLOCK, height);
+		}
+
+		//cells of the rectangle out of the full blocks
+		for(int x=x0; x<x1; x++){
+			if(x >= ix0 && x < ix1){
+				count += scan(ignite, type, x, y0, iy0) + scan(ignite, type, x, iy1, y1);
+			} else {
+				count += scan(ignite, type, x, y0, y1);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of cells of the given type whose Chebyshev distance from x,y is at most radius
+	 * (the square of side 2*radius+1 centered in x,y, as the neighborhood of the fire spread), clipped to the world
+	 */
+	public int countAround(Ignite ignite, CellType type, int x, int y, int radius){
+		return count(ignite, type, x - radius, y - radius, x + radius + 1, y + radius + 1);
+	}
+
+	private static int scan(Ignite ignite, CellType type, int x, int y0, int y1){
+		int count = 0;
+		for(int y=y0; y<y1; y++){
+			if(ignite.typeAt(x, y) == type){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void add(int[] tree, int bx, int by, int delta){
+		for(int i=bx+1; i<=blocksX; i+=i&-i){
+			for(int j=by+1; j<=blocksY; j+=j&-j){
+				tree[i * (blocksY + 1) + j] += delta;
+			}
+		}
+	}
+
+	/*
+	 * Cells in the blocks with bx < toX and by < toY.
+	 */
+	private int prefix(int[] tree, int toX, int toY){
+		int sum = 0;
+		for(int i=toX; i>0; i-=i&-i){
+			for(int j=toY; j>0; j-=j&-j){
+				sum += tree[i * (blocksY + 1) + j];
+			}
+		}
+		return sum;
+	}
+}
@@ -56,6 +56,11 @@ public class CellDataPacket {
             this.awards = new LinkedHashSet(payload.awards);
             this.soldCells = new LinkedHashSet(payload.soldCells);
         }
+        
+        // number of entries carried by the payload
+        public int size() {
+            return UAVs.size() + bids.size() + awards.size() + soldCells.size();
+        }
     };
 
     public Header header;
@@ -72,7 +77,7 @@ public class CellDataPacket {
     }
     
     public void addBid() {
-        this.payload.bids.add(new CellBid(this.header.sender, this.header.fire));
+        this.payload.bids.add(this.header.sender.cellBid(this.header.fire));
     }
     
     public void addAllBids(Set<CellBid> bids) {
@@ -0,0 +1,259 @@
+package sim.app.firecontrol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import sim.engine.SimState;
+
+/**
+ * Sparse forest for huge maps, used instead of the dense ObjectGrid2D when Ignite.sparseForest is set.
+ *
+ * The world is split in chunks of CHUNK x CHUNK cells.
+ * A chunk whose cells are all in the same resting state (a type whose cells do nothing when
+ * stepped, status 1, no task) is stored as that type only. Its cells are created the first time
+ * one of them is needed as a WorldCell, e.g. because a fire next to it lowers its status, so
+ * memory grows with the area touched by fires, lakes and agents instead of the area of the map.
+ * Chunks that go back to a single resting type (e.g. completely burned) are shared again by compact.
+ *
+ * The forest is scheduled as a single Steppable that steps the cells of the created chunks
+ * in the place of the cells themselves.
+ */
+public class ChunkedForest implements ForestStore{
+	private static final long serialVersionUID = 1L;
+
+	public static final int CHUNK = 64;
+	//resting chunks are shared again every this many steps
+	private static final int COMPACT_PERIOD = 64;
+
+	public final int width;
+	public final int height;
+	private final int chunksX;
+	private final int chunksY;
+
+	//cells of each chunk (x-x0)*CHUNK+(y-y0), null while the chunk is uniform
+	private final WorldCell[][] cells;
+	//type of all the cells of each uniform chunk
+	private final CellType[] uniform;
+	//chunks with cells, in order of creation
+	private ArrayList<WorldCell[]> created = new ArrayList<>();
+	//cells to step in the current step, see SteppedCells
+	private final SteppedCells stepped;
+
+	public ChunkedForest(int width, int height, CellType type){
+		this.width = width;
+		this.height = height;
+		this.chunksX = (width + CHUNK - 1) / CHUNK;
+		this.chunksY = (height + CHUNK - 1) / CHUNK;
+		this.stepped = new SteppedCells(width, height);
+		this.cells = new WorldCell[chunksX * chunksY][];
+		this.uniform = new CellType[chunksX * chunksY];
+		Arrays.fill(uniform, type);
+	}
+
+	/**
+	 * @return the type of the cell, without creating its chunk
+	 */
+	@Override
+	public CellType type(int x, int y){
+		WorldCell[] chunk = cells[chunk(x, y)];
+		return chunk == null ? uniform[chunk(x, y)] : chunk[local(x, y)].getType();
+	}
+
+	/**
+	 * @return the cell, creating the cells of its chunk if needed
+	 */
+	@Override
+	public WorldCell get(int x, int y){
+		int c = chunk(x, y);
+		WorldCell[] chunk = cells[c];
+		if(chunk == null){
+			chunk = materialize(c);
+		}
+		return chunk[local(x, y)];
+	}
+
+	/**
+	 * @return the cell if its chunk has been created, null if the chunk is uniform
+	 */
+	@Override
+	public WorldCell peek(int x, int y){
+		WorldCell[] chunk = cells[chunk(x, y)];
+		return chunk == null ? null : chunk[local(x, y)];
+	}
+
+	/**
+	 * Change the type of a cell (world generation and loading only, no notification).
+	 * Nothing is created if the cell already has that type.
+	 */
+	@Override
+	public void set(int x, int y, CellType type){
+		if(!type(x, y).equals(type)){
+			get(x, y).setType(type);
+		}
+	}
+
+	/**
+	 * @return the number of cells of the given type
+	 */
+	@Override
+	public long count(CellType type){
+		long count = 0;
+		for(int c=0; c<cells.length; c++){
+			if(cells[c] == null){
+				if(uniform[c].equals(type)){
+					count += (long) chunkWidth(c) * chunkHeight(c);
+				}
+			} else {
+				for(WorldCell cell : cells[c]){
+					if(cell != null && cell.getType().equals(type)){
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of chunks whose cells have been created
+	 */
+	public int createdChunks(){
+		return created.size();
+	}
+
+	/**
+	 * @return the number of chunks of the forest
+	 */
+	public int chunks(){
+		return cells.length;
+	}
+
+	/**
+	 * Share again the chunks whose cells are all resting in the same type.
+	 * Called periodically by step, starting from the first step.
+	 */
+	public void compact(){
+		ArrayList<WorldCell[]> kept = new ArrayList<>(created.size());
+		for(WorldCell[] chunk : created){
+			//the first cell of a chunk is never out of the world
+			WorldCell first = chunk[0];
+			CellType type = first.getType();
+			boolean resting = isResting(type);
+			for(int i=0; i<chunk.length && resting; i++){
+				WorldCell cell = chunk[i];
+				//burned cells may still be listed by their task, they never change anyway
+				resting = cell == null || (cell.getType().equals(type) && (!type.equals(CellType.NORMAL) || cell.getStatus() == 1));
+			}
+			if(resting){
+				int c = chunk(first.x, first.y);
+				cells[c] = null;
+				uniform[c] = type;
+			} else {
+				kept.add(chunk);
+			}
+		}
+		created = kept;
+	}
+
+	/**
+	 * Step the cells of the created chunks that can do something in a random order, as the cells
+	 * of a dense forest (see SteppedCells); cells of chunks created during the step (e.g. reached by
+	 * a fire) are stepped if they are in reach of the fires. Resting cells of uniform chunks only matter when fires
+	 * can start by themselves, in that case they draw the same numbers as WorldCell.step.
+	 */
+	@Override
+	public void step(SimState state){
+		Ignite ignite = (Ignite) state;
+		long step = ignite.currentStep();
+		boolean selfIgnite = ignite.selfIgniteMax > 0 && step != 0 && step % 500 == 0;
+		stepped.clear();
+		for(int i=0; i<created.size(); i++){
+			for(WorldCell cell : created.get(i)){
+				if(cell == null){
+					continue;
+				}
+				CellType type = cell.getType();
+				if(type.equals(CellType.FIRE)){
+					stepped.addFire(cell.x, cell.y);
+				} else if(type.equals(CellType.NORMAL) && (cell.isEnhanced() || cell.getStatus() < WorldCell.statusThreshold)){
+					stepped.add(cell.x, cell.y);
+				} else if(type.equals(CellType.NORMAL) && selfIgnite){
+					//out of the reach of the fires in this step, its place in the order does not matter
+					cell.step(ignite);
+				} else if(cell.isEnhanced()){
+					cell.setEnhanced(false);
+				}
+			}
+		}
+		int count = stepped.shuffle(ignite.random);
+		for(int i=0; i<count; i++){
+			//a cell of a uniform chunk is untouched, its step would do nothing
+			WorldCell cell = peek(stepped.x(i), stepped.y(i));
+			if(cell != null){
+				cell.step(ignite);
+			}
+		}
+
+		if(selfIgnite){
+			for(int c=0; c<cells.length; c++){
+				if(cells[c] == null && uniform[c].equals(CellType.NORMAL)){
+					selfIgnite(ignite, c);
+				}
+			}
+		}
+		if(ignite.schedule.getSteps() % COMPACT_PERIOD == 0){
+			compact();
+		}
+	}
+
+	private void selfIgnite(Ignite ignite, int c){
+		int x0 = (c / chunksY) * CHUNK;
+		int y0 = (c % chunksY) * CHUNK;
+		long step = ignite.currentStep();
+		for(int x=x0; x<x0+chunkWidth(c); x++){
+			for(int y=y0; y<y0+chunkHeight(c); y++){
+				if(ignite.selfIgniteMax > 0 && ignite.streams.cell(step, x, y, RandomStreams.IGNITE) > WorldCell.selfIgniteThreshold){
+					get(x, y).selfIgnite(ignite);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Cells of these types do nothing when stepped, as long as the status of normal cells is untouched.
+	 */
+	private static boolean isResting(CellType type){
+		return type.equals(CellType.NORMAL) || type.equals(CellType.EXTINGUISHED)
+				|| type.equals(CellType.WATER) || type.equals(CellType.BURNED);
+	}
+
+	private WorldCell[] materialize(int c){
+		int x0 = (c / chunksY) * CHUNK;
+		int y0 = (c % chunksY) * CHUNK;
+		WorldCell[] chunk = new WorldCell[CHUNK * CHUNK];
+		for(int x=x0; x<x0+chunkWidth(c); x++){
+			for(int y=y0; y<y0+chunkHeight(c); y++){
+				chunk[local(x, y)] = new WorldCell(x, y, uniform[c]);
+			}
+		}
+		cells[c] = chunk;
+		created.add(chunk);
+		return chunk;
+	}
+
+	private int chunk(int x, int y){
+		return (x / CHUNK) * chunksY + y / CHUNK;
+	}
+
+	private static int local(int x, int y){
+		return (x % CHUNK) * CHUNK + y % CHUNK;
+	}
+
+	private int chunkWidth(int c){
+		return Math.min(CHUNK, width - (c / chunksY) * CHUNK);
+	}
+
+	private int chunkHeight(int c){
+		return Math.min(CHUNK, height - (c % chunksY) * CHUNK);
+	}
+}
@@ -0,0 +1,92 @@
+package sim.app.firecontrol;
+
+/**
+ * Latency of the decisions of the agents, one histogram per AgentAction:
+ * - perCall, the time taken by a single UAV.step doing that action
+ * - perStep, the time taken by all the UAVs doing that action in the same step,
+ *   i.e. how long that action stalled the step (only steps where the action happened)
+ * The slowest single decision of the run is kept to find out who caused it.
+ *
+ * Each simulation has its own, latencies of parallel replications are combined with add.
+ */
+public class DecisionLatencies {
+	private static final AgentAction[] ACTIONS = AgentAction.values();
+
+	public final LatencyHistogram[] perCall = new LatencyHistogram[ACTIONS.length];
+	public final LatencyHistogram[] perStep = new LatencyHistogram[ACTIONS.length];
+
+	//the slowest decision
+	public long slowestNanos = -1;
+	public int slowestUAV = -1;
+	public AgentAction slowestAction;
+	public long slowestStep = -1;
+
+	//time spent by each action in the current step
+	private final long[] stepNanos = new long[ACTIONS.length];
+	private final boolean[] stepActive = new boolean[ACTIONS.length];
+
+	public DecisionLatencies(){
+		for(int a=0; a<ACTIONS.length; a++){
+			perCall[a] = new LatencyHistogram();
+			perStep[a] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Called by a UAV at the end of each step.
+	 */
+	public void record(UAV uav, AgentAction action, long nanos, long step){
+		int a = action.ordinal();
+		perCall[a].record(nanos);
+		stepNanos[a] += nanos;
+		stepActive[a] = true;
+		if(nanos > slowestNanos){
+			slowestNanos = nanos;
+			slowestUAV = uav.id;
+			slowestAction = action;
+			slowestStep = step;
+		}
+	}
+
+	/**
+	 * Close the current step, called once per step after the agents (see FireController).
+	 */
+	public void endStep(){
+		for(int a=0; a<ACTIONS.length; a++){
+			if(stepActive[a]){
+				perStep[a].record(stepNanos[a]);
+				stepNanos[a] = 0;
+				stepActive[a] = false;
+			}
+		}
+	}
+
+	public void add(DecisionLatencies other){
+		for(int a=0; a<ACTIONS.length; a++){
+			perCall[a].add(other.perCall[a]);
+			perStep[a].add(other.perStep[a]);
+		}
+		if(other.slowestNanos > slowestNanos){
+			slowestNanos = other.slowestNanos;
+			slowestUAV = other.slowestUAV;
+			slowestAction = other.slowestAction;
+			slowestStep = other.slowestStep;
+		}
+	}
+
+	/**
+	 * @return the percentiles of all the histograms, in microseconds, one line each
+	 */
+	public String report(){
+		StringBuilder sb = new StringBuilder();
+		for(int a=0; a<ACTIONS.length; a++){
+			sb.append("latency " + ACTIONS[a] + " per call (us): " + perCall[a].summary(1000) + "\n");
+			sb.append("latency " + ACTIONS[a] + " per step (us): " + perStep[a].summary(1000) + "\n");
+		}
+		if(slowestAction != null){
+			sb.append("slowest decision: UAV-" + slowestUAV + " " + slowestAction + " at step " + slowestStep
+					+ " (" + slowestNanos / 1000 + " us)\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,79 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+
+/**
+ * Cells whose type changed since they were last drained, filled by Ignite.notifyTypeChange
+ * and drained by a reader of the changes: the forest portrayal of the UI at each repaint
+ * (see ForestPortrayal2D), a SnapshotPublisher, a StateStreamWriter.
+ *
+ * The list is bounded: when more than maxCells cells changed (e.g. the display has been hidden
+ * for a long time) the single cells are dropped and the whole forest is reported as changed.
+ * Cells are indexed as x*height+y, i.e. following ObjectGrid2D.field[x][y].
+ * The model and the UI run on different threads: cells are added to one array while the
+ * other one, swapped by drain, is read by the UI.
+ */
+public class DirtyCells {
+	public final int width;
+	public final int height;
+	private final int maxCells;
+	private int[] cells = new int[1024];
+	private int size = 0;
+	private int[] drained = new int[1024];
+	//too many changes, or a new world: everything has to be redrawn
+	private boolean all = true;
+
+	public DirtyCells(int width, int height){
+		this.width = width;
+		this.height = height;
+		this.maxCells = Math.max(1024, width * height / 8);
+	}
+
+	public synchronized void add(int x, int y){
+		if(all){
+			return;
+		}
+		if(size == maxCells){
+			all = true;
+			size = 0;
+			return;
+		}
+		if(size == cells.length){
+			cells = Arrays.copyOf(cells, Math.min(maxCells, 2 * size));
+		}
+		cells[size++] = x * height + y;
+	}
+
+	/**
+	 * Report the whole forest as changed, e.g. after a checkpoint has been restored.
+	 */
+	public synchronized void addAll(){
+		all = true;
+		size = 0;
+	}
+
+	/**
+	 * Forget the changed cells, they are left in drained() until the next call.
+	 * @return the number of cells changed, -1 if the whole forest has to be redrawn
+	 */
+	public synchronized int drain(){
+		if(all){
+			all = false;
+			size = 0;
+			return -1;
+		}
+		int count = size;
+		int[] swap = drained;
+		drained = cells;
+		cells = swap;
+		size = 0;
+		return count;
+	}
+
+	/**
+	 * @return the cells of the last drain, only the first ones it returned are valid
+	 */
+	public int[] drained(){
+		return drained;
+	}
+}
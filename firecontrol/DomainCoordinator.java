@@ -0,0 +1,192 @@
+package sim.app.firecontrol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coordinator of a distributed run: the world is split in vertical strips, one for each worker
+ * process (see DomainWorker), that exchange their borders after every step.
+ * The coordinator hands out the strips, steps all the workers together and sums up their state
+ * until no fire is left in the whole world or maxsteps is reached.
+ *
+ * Usage:
+ *   java sim.app.firecontrol.DomainCoordinator -workers 4 -width 4000 -height 1000 -uavs 16
+ *        -fires 20 -range 30 -seed 1 -maxsteps 100000 -port 7070 -spawn true -procedural true
+ *
+ * Without -spawn the workers have to be started by hand, on any host that can reach the coordinator:
+ *   java sim.app.firecontrol.DomainWorker <coordinator host> 7070
+ * With -raster the world is the given raster (see WorldRaster), each worker loads its own columns.
+ */
+public class DomainCoordinator {
+
+	public int workers = 2;
+	public int width = 120;
+	public int height = 60;
+	public int uavs = 4;
+	public int fires = 5;
+	public double range = 30;
+	public long seed = System.currentTimeMillis();
+	public long maxSteps = 100000;
+	public int port = 7070;
+	public boolean spawn = false; //start the workers as child processes of this one
+	public boolean procedural = false;
+	public String raster = null;
+
+	/* state of the whole world after the last step */
+	public long steps = 0;
+	public int cellsOnFire;
+	public int cellsBurned;
+	public int cellsOnWater;
+	public long messagesSent;
+	public int[] uavsPerWorker;
+
+	private final List<Process> processes = new ArrayList<>();
+
+	/**
+	 * Wait for the workers, hand out the strips and run until the fires are gone or maxSteps is reached.
+	 */
+	public void runAll() throws IOException, InterruptedException {
+		if(raster != null){
+			int[] size = WorldRaster.size(new File(raster));
+			width = size[0];
+			height = size[1];
+		}
+		if(workers > width){
+			throw new IllegalArgumentException("More workers than columns: " + workers + " > " + width);
+		}
+
+		Socket[] sockets = new Socket[workers];
+		DataInputStream[] in = new DataInputStream[workers];
+		DataOutputStream[] out = new DataOutputStream[workers];
+		String[] hosts = new String[workers];
+		int[] haloPorts = new int[workers];
+		try(ServerSocket server = new ServerSocket(port)){
+			if(spawn){
+				for(int i=0; i<workers; i++){
+					processes.add(new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"),
+							DomainWorker.class.getName(), "localhost", Integer.toString(server.getLocalPort()))
+							.inheritIO().start());
+				}
+			}
+			//workers get their strip in the order they connect
+			for(int i=0; i<workers; i++){
+				sockets[i] = server.accept();
+				sockets[i].setTcpNoDelay(true);
+				in[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream()));
+				out[i] = new DataOutputStream(new BufferedOutputStream(sockets[i].getOutputStream()));
+				hosts[i] = in[i].readUTF();
+				haloPorts[i] = in[i].readInt();
+				System.err.println("worker " + i + " connected from " + sockets[i].getInetAddress().getHostAddress());
+			}
+		}
+
+		for(int i=0; i<workers; i++){
+			int x0 = share(width, i);
+			out[i].writeInt(i);
+			out[i].writeInt(workers);
+			out[i].writeInt(x0);
+			out[i].writeInt(share(width, i + 1) - x0);
+			out[i].writeInt(height);
+			out[i].writeLong(seed);
+			out[i].writeLong(RandomStreams.mix(seed + i));
+			out[i].writeInt(share(uavs, i + 1) - share(uavs, i));
+			out[i].writeInt(share(uavs, i));
+			out[i].writeInt(share(fires, i + 1) - share(fires, i));
+			out[i].writeDouble(range);
+			out[i].writeBoolean(procedural);
+			out[i].writeUTF(raster == null ? "" : raster);
+			out[i].writeUTF(i + 1 < workers ? hosts[i + 1] : "");
+			out[i].writeInt(i + 1 < workers ? haloPorts[i + 1] : -1);
+			out[i].flush();
+		}
+
+		long start = System.currentTimeMillis();
+		uavsPerWorker = new int[workers];
+		do{
+			for(int i=0; i<workers; i++){
+				out[i].writeInt(DomainWorker.STEP);
+				out[i].flush();
+			}
+			cellsOnFire = 0;
+			cellsBurned = 0;
+			cellsOnWater = 0;
+			messagesSent = 0;
+			for(int i=0; i<workers; i++){
+				cellsOnFire += in[i].readInt();
+				cellsBurned += in[i].readInt();
+				cellsOnWater += in[i].readInt();
+				messagesSent += in[i].readLong();
+				uavsPerWorker[i] = in[i].readInt();
+			}
+			steps++;
+			if(steps % 500 == 0){
+				System.err.println(String.format(Locale.US, "step %d, cells on fire %d, cells burned %d, UAVs per worker %s",
+						steps, cellsOnFire, cellsBurned, Arrays.toString(uavsPerWorker)));
+			}
+		} while(cellsOnFire > 0 && steps < maxSteps);
+
+		for(int i=0; i<workers; i++){
+			out[i].writeInt(DomainWorker.STOP);
+			out[i].flush();
+		}
+		for(Process p : processes){
+			p.waitFor();
+		}
+		for(Socket s : sockets){
+			s.close();
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		System.out.println("world: " + width + "x" + height + " on " + workers + " workers");
+		System.out.println("steps: " + steps);
+		System.out.println("extinguished: " + (cellsOnFire == 0));
+		System.out.println("cells on fire: " + cellsOnFire);
+		System.out.println("cells burned: " + cellsBurned);
+		System.out.println("cells saved: " + ((long) width*height - cellsOnWater - cellsBurned - cellsOnFire));
+		System.out.println("messages sent: " + messagesSent);
+		System.out.println("steps per second: " + String.format(Locale.US, "%.2f", millis == 0 ? 0.0 : steps * 1000.0 / millis));
+	}
+
+	/*
+	 * First of the total/workers items of the i-th worker, the remainder is spread over the workers.
+	 */
+	private int share(int total, int i){
+		return (int) ((long) total * i / workers);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		DomainCoordinator coordinator = new DomainCoordinator();
+		for(int i=0; i+1<args.length; i+=2){
+			String value = args[i+1];
+			switch(args[i]){
+				case "-workers": coordinator.workers = Integer.parseInt(value); break;
+				case "-width": coordinator.width = Integer.parseInt(value); break;
+				case "-height": coordinator.height = Integer.parseInt(value); break;
+				case "-uavs": coordinator.uavs = Integer.parseInt(value); break;
+				case "-fires": coordinator.fires = Integer.parseInt(value); break;
+				case "-range": coordinator.range = Double.parseDouble(value); break;
+				case "-seed": coordinator.seed = Long.parseLong(value); break;
+				case "-maxsteps": coordinator.maxSteps = Long.parseLong(value); break;
+				case "-port": coordinator.port = Integer.parseInt(value); break;
+				case "-spawn": coordinator.spawn = Boolean.parseBoolean(value); break;
+				case "-procedural": coordinator.procedural = Boolean.parseBoolean(value); break;
+				case "-raster": coordinator.raster = value; break;
+				default:
+					System.err.println("Unknown option " + args[i]);
+					System.exit(-1);
+			}
+		}
+		coordinator.runAll();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,428 @@
+package sim.app.firecontrol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import sim.engine.Stoppable;
+import sim.util.Double3D;
+
+/**
+ * One domain of a distributed run, see DomainCoordinator.
+ *
+ * The world is split in vertical strips of columns, each worker runs the strip it is assigned
+ * as a simulation of its own (Ignite.worker is set and Ignite.originX is the first column of the strip)
+ * and talks to the workers of the strips on its left and on its right.
+ * After every step the two neighbors exchange a halo:
+ * - the number of cells on fire of the sender
+ * - the type of the cells of the column on the border, the other side keeps them as ghost cells:
+ *   ghosts on fire spread the fire to the cells of the border (see GhostCell)
+ * - the UAVs whose position has left the strip on the side of the receiver
+ * UAVs of a domain with no fires left and no task fly toward the neighbor with more fires, until
+ * they cross the border. A UAV is handed over with its state: position, target, last action,
+ * extinguish progress, task, sold cells and the outcome of the auctions it took part in (the award
+ * of its last task packet, the award and sold cells of its last cell packet). Auctions are over by
+ * the end of a step, so no packet is in flight. Cells are sent with the coordinates of the whole world,
+ * the receiver keeps the ones of its strip; tasks are sent as centroid and radius, the receiver takes
+ * the task of its closest cell on fire within the radius, if any (a fire across the border is a
+ * different task on each side).
+ *
+ * Usage (started by the coordinator, see DomainCoordinator -spawn):
+ *   java sim.app.firecontrol.DomainWorker <coordinator host> <coordinator port>
+ */
+public class DomainWorker {
+	public static final int STEP = 1;
+	public static final int STOP = 2;
+
+	/* assignment of the coordinator */
+	public int index;
+	public int count;
+	public long worldSeed;
+
+	public Ignite ignite;
+
+	private final DataInputStream coordinatorIn;
+	private final DataOutputStream coordinatorOut;
+	private final ServerSocket haloServer;
+	//links to the neighbors, null on the borders of the world
+	private Link left;
+	private Link right;
+	//cells on fire of the neighbors at the last exchange
+	private int leftFires = 0;
+	private int rightFires = 0;
+
+	//the UAVs of this domain, to stop them when they leave
+	private final HashMap<UAV, Stoppable> scheduled = new HashMap<>();
+
+	/*
+	 * Halo channel with a neighbor, the ghost cells are just out of the border on its side.
+	 */
+	private static class Link {
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+		final int ghostX;
+
+		Link(Socket socket, int ghostX) throws IOException {
+			socket.setTcpNoDelay(true);
+			this.socket = socket;
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.ghostX = ghostX;
+		}
+	}
+
+	public DomainWorker(String host, int port) throws IOException {
+		Socket coordinator = new Socket(host, port);
+		coordinator.setTcpNoDelay(true);
+		coordinatorIn = new DataInputStream(new BufferedInputStream(coordinator.getInputStream()));
+		coordinatorOut = new DataOutputStream(new BufferedOutputStream(coordinator.getOutputStream()));
+		haloServer = new ServerSocket(0);
+
+		//the address the coordinator has been reached from is the one the neighbors can use as well
+		coordinatorOut.writeUTF(coordinator.getLocalAddress().getHostAddress());
+		coordinatorOut.writeInt(haloServer.getLocalPort());
+		coordinatorOut.flush();
+	}
+
+	/**
+	 * Read the assignment of the coordinator, start the simulation of the domain and connect to the neighbors.
+	 */
+	public void setup() throws IOException {
+		index = coordinatorIn.readInt();
+		count = coordinatorIn.readInt();
+		int originX = coordinatorIn.readInt();
+		int width = coordinatorIn.readInt();
+		int height = coordinatorIn.readInt();
+		worldSeed = coordinatorIn.readLong();
+		long seed = coordinatorIn.readLong();
+		int uavs = coordinatorIn.readInt();
+		int firstUAV = coordinatorIn.readInt();
+		int fires = coordinatorIn.readInt();
+		double range = coordinatorIn.readDouble();
+		boolean procedural = coordinatorIn.readBoolean();
+		String raster = coordinatorIn.readUTF();
+		String rightHost = coordinatorIn.readUTF();
+		int rightPort = coordinatorIn.readInt();
+
+		ignite = new Ignite(seed);
+		ignite.worker = this;
+		ignite.originX = originX;
+		ignite.width = width;
+		ignite.height = height;
+		ignite.numFires = fires;
+		ignite.communicationRange = range;
+		ignite.proceduralWorld = procedural;
+		ignite.rasterFrom = raster.isEmpty() ? null : raster;
+		//the UAVs are placed here, with the ids they have in the whole world
+		ignite.numUAVs = 0;
+		//UAVs are stepped at each step, so that they can be stopped when they leave
+		ignite.eventDrivenTravel = false;
+		ignite.writeReport = false;
+		ignite.start();
+		placeUAVs(uavs, firstUAV);
+
+		//connect to the right first and then accept the left: the first worker does not wait for anybody
+		if(rightPort != -1){
+			right = new Link(new Socket(rightHost, rightPort), ignite.width);
+		}
+		if(index > 0){
+			left = new Link(haloServer.accept(), -1);
+		}
+		haloServer.close();
+	}
+
+	/*
+	 * Random placement of the UAVs of this domain, as Ignite.placeUAVs.
+	 */
+	private void placeUAVs(int uavs, int firstUAV){
+		HashSet<Double3D> extracted = new HashSet<Double3D>();
+		Double3D location;
+		for(int i=0; i<uavs; i++){
+			do{
+				location = new Double3D(ignite.random.nextInt(ignite.width), ignite.random.nextInt(ignite.height), ignite.random.nextInt(ignite.depth));
+			} while(extracted.contains(location));
+			extracted.add(location);
+			arrive(firstUAV + i, location);
+		}
+	}
+
+	private UAV arrive(int id, Double3D location){
+		UAV uav = new UAV(id, location, ignite);
+		ignite.UAVs.add(uav);
+		ignite.air.setObjectLocation(uav, location);
+		scheduled.put(uav, ignite.schedule.scheduleRepeating(uav, 1, 1));
+		return uav;
+	}
+
+	/**
+	 * Run the steps asked by the coordinator until it asks to stop.
+	 */
+	public void run() throws IOException {
+		while(coordinatorIn.readInt() == STEP){
+			ignite.schedule.step(ignite);
+			exchangeHalos();
+
+			coordinatorOut.writeInt(ignite.cellsOnFire);
+			coordinatorOut.writeInt(ignite.cellsBurned);
+			coordinatorOut.writeInt(ignite.cellsOnWater);
+			coordinatorOut.writeLong(ignite.messagesSent);
+			coordinatorOut.writeInt(ignite.UAVs.size());
+			coordinatorOut.flush();
+		}
+		ignite.finish();
+		if(left != null){
+			left.socket.close();
+		}
+		if(right != null){
+			right.socket.close();
+		}
+	}
+
+	/*
+	 * Exchange the halos with the neighbors. Along the chain of domains each worker first
+	 * receives from its left and then sends to it, while it first sends to its right:
+	 * no two neighbors wait for each other.
+	 */
+	private void exchangeHalos() throws IOException {
+		//UAVs with nothing to do in a domain with no fires left fly toward the neighbor with more fires
+		boolean help = ignite.cellsOnFire == 0 && leftFires + rightFires > 0;
+		double toward = leftFires >= rightFires ? -1 : ignite.width;
+		ArrayList<UAV> toLeft = new ArrayList<>();
+		ArrayList<UAV> toRight = new ArrayList<>();
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			uav.syncTravel();
+			if(help && uav.myTask == null){
+				uav.target = new Double3D(toward, uav.y, uav.z);
+				uav.move(ignite);
+			}
+			if(uav.x < 0 && left != null){
+				toLeft.add(uav);
+			} else if(uav.x >= ignite.width && right != null){
+				toRight.add(uav);
+			}
+		}
+
+		if(left != null){
+			leftFires = receive(left);
+			send(left, toLeft, 0);
+		}
+		if(right != null){
+			send(right, toRight, ignite.width - 1);
+			rightFires = receive(right);
+		}
+	}
+
+	private void send(Link link, ArrayList<UAV> leaving, int column) throws IOException {
+		link.out.writeInt(ignite.cellsOnFire);
+		for(int h=0; h<ignite.height; h++){
+			link.out.writeByte(ignite.typeAt(column, h).ordinal());
+		}
+		link.out.writeInt(leaving.size());
+		for(UAV uav : leaving){
+			writeUAV(link.out, uav);
+			//the UAV leaves this domain
+			scheduled.remove(uav).stop();
+			ignite.UAVs.remove(uav);
+			ignite.air.remove(uav);
+		}
+		link.out.flush();
+	}
+
+	/*
+	 * @return the cells on fire of the neighbor
+	 */
+	private int receive(Link link) throws IOException {
+		int fires = link.in.readInt();
+		CellType[] types = CellType.values();
+		int column = link.ghostX == -1 ? 0 : ignite.width - 1;
+		boolean spread = false;
+		for(int h=0; h<ignite.height; h++){
+			CellType type = types[link.in.readByte()];
+			if(type.equals(CellType.FIRE)){
+				new GhostCell(link.ghostX, h, type).spread(ignite);
+				spread = true;
+			}
+		}
+		if(spread){
+			//the cells of the border are enhanced again by the fires of this domain in the next step
+			for(int h=0; h<ignite.height; h++){
+				if(ignite.typeAt(column, h).equals(CellType.NORMAL)){
+					ignite.cell(column, h).setEnhanced(false);
+				}
+			}
+		}
+
+		int arrivals = link.in.readInt();
+		for(int i=0; i<arrivals; i++){
+			readUAV(link.in);
+		}
+		return fires;
+	}
+
+	/*
+	 * State of a leaving UAV, positions in the coordinates of the whole world.
+	 */
+	private void writeUAV(DataOutputStream out, UAV uav) throws IOException {
+		out.writeInt(uav.id);
+		out.writeDouble(ignite.originX + uav.x);
+		out.writeDouble(uav.y);
+		out.writeDouble(uav.z);
+		out.writeBoolean(uav.target != null);
+		if(uav.target != null){
+			out.writeDouble(ignite.originX + uav.target.x);
+			out.writeDouble(uav.target.y);
+			out.writeDouble(uav.target.z);
+		}
+		out.writeInt(uav.action == null ? -1 : uav.action.ordinal());
+		out.writeInt(uav.startedToExtinguishAt);
+		writeTask(out, uav.myTask);
+		writeCells(out, uav.soldCells);
+
+		//the outcome of the last task auction, still used by selectTask
+		out.writeBoolean(uav.taskPacket != null);
+		if(uav.taskPacket != null){
+			Task awarded = null;
+			for(TaskAward award : uav.taskPacket.payload.awards){
+				if(award.bidder == uav){
+					awarded = award.award;
+				}
+			}
+			writeTask(out, awarded);
+		}
+		//the outcome of the last cell auction
+		out.writeBoolean(uav.cellPacket != null);
+		if(uav.cellPacket != null){
+			writeTask(out, uav.cellPacket.header.fire);
+			WorldCell awarded = null;
+			for(CellAward award : uav.cellPacket.payload.awards){
+				if(award.bidder == uav){
+					awarded = award.award;
+				}
+			}
+			out.writeBoolean(awarded != null);
+			if(awarded != null){
+				out.writeInt(ignite.originX + awarded.x);
+				out.writeInt(awarded.y);
+			}
+			writeCells(out, uav.cellPacket.payload.soldCells);
+		}
+	}
+
+	/*
+	 * Rebuild a UAV sent by writeUAV in this domain.
+	 */
+	private void readUAV(DataInputStream in) throws IOException {
+		int id = in.readInt();
+		Double3D location = new Double3D(in.readDouble() - ignite.originX, in.readDouble(), in.readDouble());
+		UAV uav = arrive(id, location);
+		if(in.readBoolean()){
+			Double3D target = new Double3D(in.readDouble() - ignite.originX, in.readDouble(), in.readDouble());
+			//a target out of this strip was the way here, the UAV looks for a new one
+			uav.target = target.x >= 0 && target.x < ignite.width ? target : null;
+		}
+		int action = in.readInt();
+		uav.action = action == -1 ? null : AgentAction.values()[action];
+		uav.startedToExtinguishAt = in.readInt();
+		uav.myTask = readTask(in);
+		readCells(in, uav.soldCells);
+
+		if(in.readBoolean()){
+			uav.taskPacket = new TaskDataPacket(uav, PacketType.EXPEDITING, ignite.UAVs, null);
+			Task awarded = readTask(in);
+			if(awarded != null){
+				uav.taskPacket.payload.awards.add(new TaskAward(uav, awarded));
+			}
+		}
+		if(in.readBoolean()){
+			uav.cellPacket = new CellDataPacket(uav, readTask(in), PacketType.EXPEDITING, ignite.UAVs);
+			if(in.readBoolean()){
+				WorldCell awarded = cell(in.readInt(), in.readInt());
+				if(awarded != null){
+					uav.cellPacket.payload.awards.add(new CellAward(uav, awarded));
+				}
+			}
+			readCells(in, uav.cellPacket.payload.soldCells);
+		}
+	}
+
+	private void writeTask(DataOutputStream out, Task task) throws IOException {
+		out.writeBoolean(task != null);
+		if(task != null){
+			out.writeInt(ignite.originX + task.centroid.x);
+			out.writeInt(task.centroid.y);
+			out.writeDouble(task.radius);
+		}
+	}
+
+	/*
+	 * The task of the closest cell on fire of this domain within the radius of the task sent, null if none.
+	 */
+	private Task readTask(DataInputStream in) throws IOException {
+		if(!in.readBoolean()){
+			return null;
+		}
+		int x = in.readInt() - ignite.originX;
+		int y = in.readInt();
+		double radius = in.readDouble();
+		WorldCell closest = ignite.fireField.nearestFire(ignite, Math.max(0, Math.min(ignite.width - 1, x)), y);
+		if(closest == null || Math.hypot(closest.x - x, closest.y - y) > radius + 1){
+			return null;
+		}
+		return closest.getTask();
+	}
+
+	private void writeCells(DataOutputStream out, Set<WorldCell> cells) throws IOException {
+		out.writeInt(cells.size());
+		for(WorldCell cell : cells){
+			out.writeInt(ignite.originX + cell.x);
+			out.writeInt(cell.y);
+		}
+	}
+
+	/*
+	 * Add the cells of this domain, the others are dropped.
+	 */
+	private void readCells(DataInputStream in, Set<WorldCell> cells) throws IOException {
+		int size = in.readInt();
+		for(int i=0; i<size; i++){
+			WorldCell cell = cell(in.readInt(), in.readInt());
+			if(cell != null){
+				cells.add(cell);
+			}
+		}
+	}
+
+	/*
+	 * The cell at the given coordinates of the whole world, null out of this domain.
+	 */
+	private WorldCell cell(int x, int y){
+		x -= ignite.originX;
+		return x >= 0 && x < ignite.width ? ignite.cell(x, y) : null;
+	}
+
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: DomainWorker <coordinator host> <coordinator port>");
+			System.exit(-1);
+		}
+		try {
+			DomainWorker worker = new DomainWorker(args[0], Integer.parseInt(args[1]));
+			worker.setup();
+			worker.run();
+		} catch (IOException e) {
+			System.err.println("Exception in DomainWorker.main() " + e.toString());
+			System.exit(-1);
+		}
+		System.exit(0);
+	}
+}
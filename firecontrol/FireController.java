@@ -4,38 +4,193 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Locale;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
 
 public class FireController implements Steppable{
 	private static final long serialVersionUID = 1L;
+
+	//columns of the time series, one row per step
+	private static final String[] SERIES = {"step", "cellsOnFire", "cellsBurned", "cellsSaved",
+			"selectTask", "selectCell", "move", "extinguish", "taskAuctions", "cellAuctions", "messagesSent"};
+
+	private transient TimeSeriesRecorder series;
+	//common prefix of the files written for this run
+	private final String fileName;
+	private final long startedAt;
+	private final int initialFires;
+	private boolean finished = false;
+
+	//metrics published at most every METRICS_PERIOD nanoseconds, rates are computed since the previous ones
+	private static final long METRICS_PERIOD = 250000000L;
+	private long metricsAt;
+	private long metricsStep;
+	private long metricsMessages;
+
+	public FireController(Ignite ignite){
+		this.fileName = System.getProperty("user.dir") + "/" + System.currentTimeMillis();
+		this.startedAt = System.currentTimeMillis();
+		this.initialFires = ignite.cellsOnFire;
+		this.metricsAt = System.nanoTime();
+		this.metricsStep = ignite.currentStep();
+		this.metricsMessages = ignite.messagesSent;
+	}
 	
 	/**
-	 * This will check for termination conditions and writes out a file on mason root directory.
-	 * TODO: fill the file with information about your simulation according to what you would like to show
-	 * in your report
+	 * This will record the status of the simulation at each step and check for termination conditions.
+	 * At the end of the run (see finish) two files are written on mason root directory:
+	 * - <timestamp>-series.csv, the status of the simulation at each step
+	 * - <timestamp>-summary.txt, the end-of-run summary
 	 */
 	@Override
 	public void step(SimState state) {
                 Ignite ignite = (Ignite) state;
-		//create a .txt file where we can store simulation informations
-		if(ignite.cellsOnFire() == 0){
-			String fileName = System.getProperty("user.dir") + "/" + System.currentTimeMillis() + ".txt";
-			
+		ignite.latencies.endStep();
+		if(ignite.writeReport){
+			record(ignite);
+		}
+		if(ignite.metrics != null){
+			publishMetrics(ignite);
+		}
+
+		if(ignite.cellsOnFire == 0 && ignite.worker == null){
+			//the stream is written after this in the step, its last frame has to be written before the end
+			if(ignite.stateStream != null){
+				ignite.stateStream.step(ignite);
+			}
+			//kill the current job of the simulation, this will call finish
+			//(domains of a distributed run are stopped by their coordinator)
+			state.kill();
+		}
+	}
+
+	/*
+	 * Add one row to the time series, the file is written by a background thread.
+	 */
+	private void record(Ignite ignite){
+		if(finished){
+			return;
+		}
+		if(series == null){
 			try {
-				FileWriter fw = new FileWriter(new File(fileName),true);
-				BufferedWriter bwr = new BufferedWriter(fw);
-				bwr.append("TODO");
-				bwr.flush();
-				bwr.close();
+				series = new TimeSeriesRecorder(new File(fileName + "-series.csv"), SERIES);
 			} catch (IOException e) {
-				System.err.println("Exception in FireControll.step() " + e.toString());
-				e.printStackTrace();
+				System.err.println("Exception in FireController.record() " + e.toString());
+				ignite.writeReport = false;
+				return;
 			}
-			
-			//kill the current job of the simulation
-			state.kill();
+		}
+
+		int[] actions = countActions(ignite);
+
+		series.add(ignite.currentStep());
+		series.add(ignite.cellsOnFire);
+		series.add(ignite.cellsBurned);
+		series.add(cellsSaved(ignite));
+		series.add(actions[AgentAction.SELECT_TASK.ordinal()]);
+		series.add(actions[AgentAction.SELECT_CELL.ordinal()]);
+		series.add(actions[AgentAction.MOVE.ordinal()]);
+		series.add(actions[AgentAction.EXTINGUISH.ordinal()]);
+		series.add(ignite.taskAuctions);
+		series.add(ignite.cellAuctions);
+		series.add(ignite.messagesSent);
+		series.endRow();
+	}
+
+	/*
+	 * Publish a new snapshot for the metrics endpoint, if enough time has passed since the last one.
+	 */
+	private void publishMetrics(Ignite ignite){
+		long now = System.nanoTime();
+		if(now - metricsAt < METRICS_PERIOD){
+			return;
+		}
+		double seconds = Math.max(now - metricsAt, 1) / 1e9;
+		long step = ignite.currentStep();
+
+		int activeTasks = 0;
+		for(Task t : ignite.tasks){
+			for(WorldCell cell : t.cells){
+				if(cell.getType().equals(CellType.FIRE)){
+					activeTasks++;
+					break;
+				}
+			}
+		}
+
+		ignite.metrics.publish(ignite.instanceName(), new MetricsServer.Snapshot(ignite.seed(), step,
+				ignite.cellsOnFire, ignite.cellsBurned, cellsSaved(ignite), activeTasks, countActions(ignite),
+				ignite.messagesSent, (ignite.messagesSent - metricsMessages) / seconds, (step - metricsStep) / seconds));
+		metricsAt = now;
+		metricsStep = step;
+		metricsMessages = ignite.messagesSent;
+	}
+
+	private static int[] countActions(Ignite ignite){
+		int[] actions = new int[AgentAction.values().length];
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			if(uav.action != null){
+				actions[uav.action.ordinal()]++;
+			}
+		}
+		return actions;
+	}
+
+	private static int cellsSaved(Ignite ignite){
+		return ignite.width*ignite.height - ignite.cellsOnWater - ignite.cellsBurned - ignite.cellsOnFire;
+	}
+
+	/**
+	 * Called by Ignite.finish when the run is over, either because all the fires are gone 
+	 * or because it has been stopped: close the time series and write the summary.
+	 */
+	public void finish(Ignite ignite){
+		if(finished || !ignite.writeReport){
+			return;
+		}
+		finished = true;
+
+		try {
+			if(series != null){
+				series.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Exception in FireController.finish() " + e.toString());
+		}
+
+		long steps = ignite.currentStep();
+		long millis = System.currentTimeMillis() - startedAt;
+		long auctions = ignite.taskAuctions + ignite.cellAuctions;
+		try {
+			FileWriter fw = new FileWriter(new File(fileName + "-summary.txt"),true);
+			BufferedWriter bwr = new BufferedWriter(fw);
+			bwr.append("seed: " + ignite.seed() + "\n");
+			bwr.append("world: " + ignite.width + "x" + ignite.height + "\n");
+			bwr.append("UAVs: " + ignite.numUAVs + "\n");
+			bwr.append("communication range: " + ignite.communicationRange + "\n");
+			bwr.append("steps: " + steps + "\n");
+			bwr.append("extinguished: " + (ignite.cellsOnFire == 0) + "\n");
+			bwr.append("initial cells on fire: " + initialFires + "\n");
+			bwr.append("cells on fire: " + ignite.cellsOnFire + "\n");
+			bwr.append("cells burned: " + ignite.cellsBurned + "\n");
+			bwr.append("cells saved: " + cellsSaved(ignite) + "\n");
+			bwr.append("cells on water: " + ignite.cellsOnWater + "\n");
+			bwr.append("task auctions: " + ignite.taskAuctions + "\n");
+			bwr.append("cell auctions: " + ignite.cellAuctions + "\n");
+			bwr.append("messages sent: " + ignite.messagesSent + "\n");
+			bwr.append("messages per auction: " + String.format(Locale.US, "%.2f", auctions == 0 ? 0.0 : ignite.messagesSent / (double) auctions) + "\n");
+			bwr.append("wall time (ms): " + millis + "\n");
+			bwr.append("steps per second: " + String.format(Locale.US, "%.2f", millis == 0 ? 0.0 : ignite.schedule.getSteps() * 1000.0 / millis) + "\n");
+			bwr.append("time series rows dropped: " + (series == null ? 0 : series.droppedRows()) + "\n");
+			bwr.append(ignite.latencies.report());
+			bwr.flush();
+			bwr.close();
+		} catch (IOException e) {
+			System.err.println("Exception in FireController.finish() " + e.toString());
+			e.printStackTrace();
 		}
 	}
 
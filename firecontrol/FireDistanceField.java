@@ -0,0 +1,318 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+
+/**
+ * Distance transform of the forest with respect to the cells on fire.
+ * For every cell of the world it stores the index of the closest FIRE cell
+ * and the (squared) distance to it, so that agents can retrieve their closest
+ * fire in O(1) instead of scanning all the cells on fire.
+ *
+ * The field is built with a multi-source BFS that propagates the nearest fire
+ * from neighbor to neighbor (8-connectivity) and it is kept up to date
+ * incrementally: a new fire only floods the cells that get closer to it, while
+ * a fire going out only recomputes the cells that were pointing to it. Those cells
+ * are not always connected (a newer fire may have taken the ones in between), so each
+ * fire counts the cells pointing to it and they are searched in rings around it
+ * until all of them have been found.
+ * As for any propagation-based transform, in rare configurations a cell can
+ * get a fire that is slightly farther than the true closest one: nearestFire uses
+ * it as a bound and searches the cells closer than it, so agents always get the
+ * closest fire.
+ *
+ * Cells are indexed as x*height+y, i.e. following ObjectGrid2D.field[x][y].
+ */
+public class FireDistanceField {
+	public static final int NONE = -1;
+
+	private final int width;
+	private final int height;
+
+	//index of the closest cell on fire, NONE if there are no fires
+	private final int[] nearest;
+	//squared distance from the closest cell on fire, Integer.MAX_VALUE if none
+	private final int[] distanceSq;
+	//number of cells pointing to each cell on fire
+	private final int[] served;
+
+	//reused by the propagation, each cell is queued at most once at a time
+	private final int[] queue;
+	private final boolean[] queued;
+	private int head;
+	private int size;
+
+	//reused to collect the cells orphaned by an extinguished fire
+	private int[] orphans;
+
+	public FireDistanceField(int width, int height){
+		this.width = width;
+		this.height = height;
+		this.nearest = new int[width*height];
+		this.distanceSq = new int[width*height];
+		this.served = new int[width*height];
+		this.queue = new int[width*height];
+		this.queued = new boolean[width*height];
+		this.orphans = new int[64];
+		//no fires until rebuild or addFire
+		Arrays.fill(nearest, NONE);
+		Arrays.fill(distanceSq, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Recompute the whole field from scratch, using all the cells on fire
+	 * in the forest of the simulation as sources.
+	 */
+	public void rebuild(Ignite ignite){
+		head = 0;
+		size = 0;
+		for(int w=0; w<width; w++){
+			for(int h=0; h<height; h++){
+				int index = w*height+h;
+				queued[index] = false;
+				served[index] = 0;
+				nearest[index] = NONE;
+				distanceSq[index] = Integer.MAX_VALUE;
+			}
+		}
+		for(int w=0; w<width; w++){
+			for(int h=0; h<height; h++){
+				if(ignite.typeAt(w, h).equals(CellType.FIRE)){
+					assign(w*height+h, w*height+h, 0);
+					enqueue(w*height+h);
+				}
+			}
+		}
+		propagate();
+	}
+
+	/**
+	 * A new fire is in the world: flood the cells that are now closer to it.
+	 */
+	public void addFire(int x, int y){
+		int index = x*height+y;
+		assign(index, index, 0);
+		enqueue(index);
+		propagate();
+	}
+
+	/**
+	 * A fire is gone (extinguished or burned): reset the cells that were pointing
+	 * to it and let the surrounding cells propagate their own closest fire.
+	 */
+	public void removeFire(int x, int y){
+		int source = x*height+y;
+		if(nearest[source] != source){
+			return;
+		}
+
+		//collect the cells served by the source, in rings around it until all of them are found
+		int count = 0;
+		int remaining = served[source];
+		int limit = Math.max(width, height);
+		for(int r=0; remaining>0 && r<=limit; r++){
+			for(int i=-r; i<=r; i++){
+				//the first and the last column of the ring whole, the others only at their two ends
+				int side = i == -r || i == r ? 1 : 2 * r;
+				for(int j=-r; j<=r; j+=side){
+					int nx = x+i;
+					int ny = y+j;
+					if(nx>=0 && ny>=0 && nx<width && ny<height){
+						int n = nx*height+ny;
+						if(nearest[n] == source){
+							assign(n, NONE, Integer.MAX_VALUE);
+							if(count == orphans.length){
+								orphans = Arrays.copyOf(orphans, count*2);
+							}
+							orphans[count++] = n;
+							remaining--;
+						}
+					}
+				}
+			}
+		}
+
+		//the border of the region is made of cells still pointing to a fire
+		for(int k=0; k<count; k++){
+			int cx = orphans[k]/height;
+			int cy = orphans[k]%height;
+			for(int i=-1; i<=1; i++){
+				for(int j=-1; j<=1; j++){
+					int nx = cx+i;
+					int ny = cy+j;
+					if(nx>=0 && ny>=0 && nx<width && ny<height){
+						int n = nx*height+ny;
+						if(nearest[n] != NONE){
+							enqueue(n);
+						}
+					}
+				}
+			}
+		}
+		propagate();
+	}
+
+	/**
+	 * @return the index (x*height+y) of the closest cell on fire, NONE if there are no fires
+	 */
+	public int nearestIndex(int x, int y){
+		return nearest[x*height+y];
+	}
+
+	/**
+	 * @return the distance from the closest cell on fire, Double.POSITIVE_INFINITY if there are no fires
+	 */
+	public double distance(int x, int y){
+		int d = distanceSq[x*height+y];
+		return d == Integer.MAX_VALUE ? Double.POSITIVE_INFINITY : Math.sqrt(d);
+	}
+
+	/**
+	 * @return the closest cell on fire w.r.t. the given location, null if there are no fires.
+	 * The cell is always on fire: if the field is out of date the world is scanned.
+	 */
+	public WorldCell nearestFire(Ignite ignite, int x, int y){
+		int index = nearest[x*height+y];
+		if(index != NONE && ignite.typeAt(index/height, index%height).equals(CellType.FIRE)){
+			return closest(ignite, null, x, y, index);
+		}
+
+		int best = NONE;
+		long bestDistSq = Long.MAX_VALUE;
+		for(int w=0; w<width; w++){
+			for(int h=0; h<height; h++){
+				if(ignite.typeAt(w, h).equals(CellType.FIRE)){
+					long dx = w-x;
+					long dy = h-y;
+					if(dx*dx+dy*dy < bestDistSq){
+						bestDistSq = dx*dx+dy*dy;
+						best = w*height+h;
+					}
+				}
+			}
+		}
+		return best == NONE ? null : ignite.cell(best/height, best%height);
+	}
+
+	/**
+	 * @return the closest cell on fire that belongs to the given task. When the closest fire
+	 * in the world is part of the task only the cells around it are searched, otherwise the
+	 * cells of the task are scanned. Null if the task has no cells on fire.
+	 */
+	public WorldCell nearestFire(Ignite ignite, Task task, int x, int y){
+		int index = nearest[x*height+y];
+		if(index != NONE && ignite.typeAt(index/height, index%height).equals(CellType.FIRE)
+				&& ignite.cell(index/height, index%height).getTask() == task){
+			//search the cells around only if they are fewer than the cells of the task
+			long side = 2 * (long) Math.ceil(Math.sqrt(distanceSq(x, y, index))) + 1;
+			if(side * side <= task.cells.size()){
+				return closest(ignite, task, x, y, index);
+			}
+		}
+
+		WorldCell best = null;
+		long bestDistSq = Long.MAX_VALUE;
+		for(WorldCell wc : task.cells){
+			if(wc.getType().equals(CellType.FIRE)){
+				long dx = wc.x-x;
+				long dy = wc.y-y;
+				if(dx*dx+dy*dy <= bestDistSq){
+					bestDistSq = dx*dx+dy*dy;
+					best = wc;
+				}
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * The closest cell on fire (of the task, any task if null) w.r.t. (x,y), given the cell on fire
+	 * at index: the closer ones are in the rings around (x,y) nearer than it.
+	 */
+	private WorldCell closest(Ignite ignite, Task task, int x, int y, int index){
+		int best = index;
+		long bestDistSq = distanceSq(x, y, index);
+		//a cell of ring r is at least r far
+		for(int r=1; (long) r*r < bestDistSq; r++){
+			for(int i=-r; i<=r; i++){
+				//the first and the last column of the ring whole, the others only at their two ends
+				int side = i == -r || i == r ? 1 : 2 * r;
+				for(int j=-r; j<=r; j+=side){
+					int nx = x+i;
+					int ny = y+j;
+					if(nx>=0 && ny>=0 && nx<width && ny<height && (long) i*i+j*j < bestDistSq
+							&& ignite.typeAt(nx, ny).equals(CellType.FIRE)
+							&& (task == null || ignite.cell(nx, ny).getTask() == task)){
+						best = nx*height+ny;
+						bestDistSq = (long) i*i+j*j;
+					}
+				}
+			}
+		}
+		return ignite.cell(best/height, best%height);
+	}
+
+	private long distanceSq(int x, int y, int index){
+		long dx = index/height-x;
+		long dy = index%height-y;
+		return dx*dx+dy*dy;
+	}
+
+	/*
+	 * Point the cell to the source, keeping the count of the cells served by each fire.
+	 */
+	private void assign(int index, int source, int d){
+		if(nearest[index] != NONE){
+			served[nearest[index]]--;
+		}
+		nearest[index] = source;
+		distanceSq[index] = d;
+		if(source != NONE){
+			served[source]++;
+		}
+	}
+
+	private void enqueue(int index){
+		if(!queued[index]){
+			queued[index] = true;
+			queue[(head+size)%queue.length] = index;
+			size++;
+		}
+	}
+
+	/*
+	 * Label-correcting BFS: each cell offers its closest fire to its neighbors
+	 * and a neighbor is queued again only if the offer improves its distance.
+	 */
+	private void propagate(){
+		while(size > 0){
+			int index = queue[head];
+			head = (head+1)%queue.length;
+			size--;
+			queued[index] = false;
+
+			int source = nearest[index];
+			//a cell pointing to a fire that is gone (not on fire anymore) offers nothing
+			if(source == NONE || nearest[source] != source){
+				continue;
+			}
+			int sx = source/height;
+			int sy = source%height;
+			int cx = index/height;
+			int cy = index%height;
+			for(int i=-1; i<=1; i++){
+				for(int j=-1; j<=1; j++){
+					int nx = cx+i;
+					int ny = cy+j;
+					if(nx>=0 && ny>=0 && nx<width && ny<height){
+						int n = nx*height+ny;
+						int d = (nx-sx)*(nx-sx)+(ny-sy)*(ny-sy);
+						if(d < distanceSq[n]){
+							assign(n, source, d);
+							enqueue(n);
+						}
+					}
+				}
+			}
+		}
+	}
+}
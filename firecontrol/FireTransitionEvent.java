@@ -0,0 +1,34 @@
+package sim.app.firecontrol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for a cell changing type (e.g. NORMAL to FIRE, FIRE to BURNED).
+ * Disabled unless the recording uses firecontrol.jfc.
+ */
+@Name("sim.app.firecontrol.FireTransition")
+@Label("Fire Transition")
+@Category({"Fire Control", "World"})
+@Description("A cell of the forest changing type")
+@Enabled(false)
+public class FireTransitionEvent extends Event {
+	@Label("X")
+	public int x;
+
+	@Label("Y")
+	public int y;
+
+	@Label("Old Type")
+	public String oldType;
+
+	@Label("New Type")
+	public String newType;
+
+	@Label("Step")
+	public long step;
+}
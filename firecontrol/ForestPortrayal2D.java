@@ -0,0 +1,139 @@
+package sim.app.firecontrol;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import sim.portrayal.DrawInfo2D;
+import sim.portrayal.FieldPortrayal2D;
+import sim.portrayal.Portrayal;
+import sim.portrayal.SimplePortrayal2D;
+
+/**
+ * Portrayal of the forest as an image with one pixel per cell, kept across repaints.
+ * At each repaint only the pixels of the cells in the dirty list of the model (see DirtyCells)
+ * are updated, then the visible part of the image is scaled onto the display: the cost of a
+ * frame depends on the cells that changed and on the size of the display, not on the size of the forest.
+ * Grid lines, if any, are drawn as whole rows and columns and only when the cells are large enough to see them.
+ *
+ * The field is the simulation itself (cells are read through Ignite.typeAt, so any forest store can be drawn).
+ * Cells cannot be inspected by clicking on them.
+ */
+public class ForestPortrayal2D extends FieldPortrayal2D{
+	private static final long serialVersionUID = 1L;
+
+	//cells smaller than this many pixels are drawn without grid lines
+	private static final double GRID_MIN_PIXELS = 4;
+
+	//color of each CellType, by ordinal
+	private final int[] colors = new int[CellType.values().length];
+	private Color gridColor = null;
+
+	private BufferedImage image;
+	private int[] pixels;
+	private DirtyCells dirty;
+
+	public ForestPortrayal2D(){
+		setColor(CellType.NORMAL, new Color(50,180,20));
+		setColor(CellType.EXTINGUISHED, new Color(50,180,20));
+		setColor(CellType.FIRE, new Color(180,50,20));
+		setColor(CellType.BURNED, Color.gray);
+		setColor(CellType.WATER, Color.blue);
+	}
+
+	public void setColor(CellType type, Color color){
+		colors[type.ordinal()] = color.getRGB();
+	}
+
+	/**
+	 * @param color the color of the grid lines, null for no grid lines
+	 */
+	public void setGridColor(Color color){
+		this.gridColor = color;
+	}
+
+	/**
+	 * The field has to be the simulation. From now on the simulation records its dirty cells.
+	 */
+	public void setField(Object field){
+		if(!(field instanceof Ignite)){
+			throw new RuntimeException("Invalid field for ForestPortrayal2D: " + field);
+		}
+		Ignite ignite = (Ignite) field;
+		super.setField(field);
+		ignite.dirtyCells.remove(dirty);
+		dirty = new DirtyCells(ignite.width, ignite.height);
+		ignite.dirtyCells.add(dirty);
+		if(image == null || image.getWidth() != ignite.width || image.getHeight() != ignite.height){
+			image = new BufferedImage(ignite.width, ignite.height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+	}
+
+	public Portrayal getDefaultPortrayal(){
+		return new SimplePortrayal2D();
+	}
+
+	/*
+	 * Bring the image up to date with the forest.
+	 */
+	private void update(Ignite ignite){
+		int width = dirty.width;
+		int height = dirty.height;
+		int count = dirty.drain();
+		if(count == -1){
+			for(int x=0; x<width; x++){
+				for(int y=0; y<height; y++){
+					pixels[y * width + x] = colors[ignite.typeAt(x, y).ordinal()];
+				}
+			}
+			return;
+		}
+		int[] cells = dirty.drained();
+		for(int i=0; i<count; i++){
+			int x = cells[i] / height;
+			int y = cells[i] % height;
+			pixels[y * width + x] = colors[ignite.typeAt(x, y).ordinal()];
+		}
+	}
+
+	@Override
+	public void draw(Object object, Graphics2D graphics, DrawInfo2D info){
+		Ignite ignite = (Ignite) field;
+		if(ignite == null || dirty == null){
+			return;
+		}
+		update(ignite);
+
+		int width = dirty.width;
+		int height = dirty.height;
+		double cellWidth = info.draw.width / width;
+		double cellHeight = info.draw.height / height;
+		//visible cells only
+		int x0 = Math.max(0, (int) Math.floor((info.clip.x - info.draw.x) / cellWidth));
+		int y0 = Math.max(0, (int) Math.floor((info.clip.y - info.draw.y) / cellHeight));
+		int x1 = Math.min(width, (int) Math.ceil((info.clip.x + info.clip.width - info.draw.x) / cellWidth));
+		int y1 = Math.min(height, (int) Math.ceil((info.clip.y + info.clip.height - info.draw.y) / cellHeight));
+		if(x0 >= x1 || y0 >= y1){
+			return;
+		}
+		int px0 = (int) Math.floor(info.draw.x + x0 * cellWidth);
+		int py0 = (int) Math.floor(info.draw.y + y0 * cellHeight);
+		int px1 = (int) Math.ceil(info.draw.x + x1 * cellWidth);
+		int py1 = (int) Math.ceil(info.draw.y + y1 * cellHeight);
+		graphics.drawImage(image, px0, py0, px1, py1, x0, y0, x1, y1, null);
+
+		if(gridColor != null && cellWidth >= GRID_MIN_PIXELS && cellHeight >= GRID_MIN_PIXELS){
+			graphics.setColor(gridColor);
+			for(int x=x0; x<=x1; x++){
+				int px = (int) Math.round(info.draw.x + x * cellWidth);
+				graphics.drawLine(px, py0, px, py1);
+			}
+			for(int y=y0; y<=y1; y++){
+				int py = (int) Math.round(info.draw.y + y * cellHeight);
+				graphics.drawLine(px0, py, px1, py);
+			}
+		}
+	}
+}
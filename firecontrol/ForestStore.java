@@ -0,0 +1,37 @@
+package sim.app.firecontrol;
+
+import sim.engine.Steppable;
+
+/**
+ * Storage of the cells of the forest used instead of the dense ObjectGrid2D (Ignite.forest)
+ * by sparse and off-heap runs, see ChunkedForest and OffHeapForest.
+ * The store is scheduled in the place of the cells and steps them by itself.
+ */
+public interface ForestStore extends Steppable{
+
+	/**
+	 * @return the type of the cell, without creating any object
+	 */
+	CellType type(int x, int y);
+
+	/**
+	 * @return the cell at the given location
+	 */
+	WorldCell get(int x, int y);
+
+	/**
+	 * @return the cell at the given location, null if the store only keeps its type
+	 * (untouched cell: status 1, not enhanced, no task)
+	 */
+	WorldCell peek(int x, int y);
+
+	/**
+	 * Change the type of a cell, world generation and loading only (nobody is notified).
+	 */
+	void set(int x, int y, CellType type);
+
+	/**
+	 * @return the number of cells of the given type
+	 */
+	long count(CellType type);
+}
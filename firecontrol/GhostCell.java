@@ -0,0 +1,31 @@
+package sim.app.firecontrol;
+
+import sim.engine.SimState;
+
+/**
+ * Cell of a neighbor domain of a distributed run (see DomainWorker), just out of the border
+ * of this one: x is -1 or Ignite.width. Ghosts are not part of the forest and are not scheduled,
+ * their type comes from the halo sent by the neighbor at each step.
+ */
+public class GhostCell extends WorldCell{
+	private static final long serialVersionUID = 1L;
+
+	public GhostCell(int x, int y, CellType type){
+		super(x, y, type);
+	}
+
+	/**
+	 * If on fire, lower the status of the normal cells of this domain next to the ghost,
+	 * as the cell does on its own side of the border.
+	 */
+	public void spread(Ignite ignite){
+		if(getType().equals(CellType.FIRE)){
+			spreadFire(ignite);
+		}
+	}
+
+	@Override
+	public void step(SimState state){
+		//the neighbor steps the cell
+	}
+}
@@ -15,7 +15,10 @@
 
 package sim.app.firecontrol;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 
 import sim.engine.SimState;
@@ -23,7 +26,6 @@ import sim.field.continuous.Continuous3D;
 import sim.field.grid.ObjectGrid2D;
 import sim.util.Bag;
 import sim.util.Double3D;
-import sim.util.Int2D;
 
 public class Ignite extends SimState{
 	private static final long serialVersionUID = 1;
@@ -38,20 +40,88 @@ public class Ignite extends SimState{
 	 * - water, the cell is part of a lake or a river
 	 */
 	public ObjectGrid2D forest;
+	/* forest of sparse or off-heap runs (null otherwise, see ForestStore).
+	 * Headless runs only, the UI draws the dense forest. */
+	public ForestStore store;
+	public boolean sparseForest = false; //only the chunks touched by fires and lakes have cells, see ChunkedForest
+	public boolean offHeapForest = false; //cells out of the heap, see OffHeapForest
+	public String offHeapFile = null; //file mapped by the off-heap forest, direct memory if null
+	public boolean mortonForest = false; //cells in Z-ordered tiles with a ghost border, see MortonForest
 
 	/* simulation params */
 	public int numUAVs = 2; //number of mavs involved in the simulation
+	public int numFires = 5; //number of fires at the beginning of the simulation
 	public Bag UAVs; // all the agents in the simulation. Bag size is numMavs    
 
-	public static int height = 60; //size of the forest
-	public static int width = 60; //size of the forest 
-	public static int depth = 50; //max altitude 
+	public int height = 60; //size of the forest
+	public int width = 60; //size of the forest 
+	public int depth = 50; //max altitude 
 
-	public static int cellsOnFire = 0;
-	public static int cellsBurned = 0;
-	public static int cellsOnWater = 0;
+	/* world generation, see WorldGenerator */
+	public boolean proceduralWorld = false; //lakes from noise instead of the two classic lakes
+	public double waterLevel = 0.3; //procedural only, the higher the more water
+	public double lakeScale = 24; //procedural only, size of the lakes in cells
+
+	/* agents params - the same for all the UAVs of this simulation, 
+	 * each simulation has its own so that many of them can run in the same JVM */
+	public double communicationRange = 30; //communication range for the UAVs
+	public double linearvelocity = 0.02; //distance covered in one step along each axis
+	public int stepToExtinguish = 10; //steps needed to extinguish a fire in a location
+	public boolean eventDrivenTravel = true; //see UAV.travel
+	public boolean phasedUAVs = false; //UAVs decide in parallel and commit in order of id, see UAVPhases
+
+	/* simulation state */
+	public int cellsOnFire = 0;
+	public int cellsBurned = 0;
+	public int cellsOnWater = 0;
+	public int selfIgniteMax = 0; //number of fires that can still start by themselves
+	public long messagesSent = 0; //packets delivered from one UAV to another
+	public long taskAuctions = 0; //auctions started to assign the tasks
+	public long cellAuctions = 0; //auctions started to assign the cells of a task
+	public int relabelTasksPeriod = 0; //steps between two rebuilds of the tasks from the cells on fire, 0 never (see TaskLabeller)
+
+	/* checks the end of the simulation and writes the report */
+	public FireController fireController;
+
+	/* checkpoint to start the simulation from, see WorldCheckpoint */
+	public String restoreFrom = null;
+	/* raster to take the world from instead of generating it, see WorldRaster */
+	public String rasterFrom = null;
+	/* stream of the state of the run for StateStreamPlayer, none if null (see StateStreamWriter) */
+	public String streamTo = null;
+	public int streamKeyframePeriod = 500; //steps between two keyframes of the stream
+	public boolean streamCompressed = true; //frames of the stream deflated
+	public StateStreamWriter stateStream;
+	/* steps already done by the run this one has been restored from */
+	public long stepOffset = 0;
+
+	/* set when this simulation is a domain of a distributed run, see DomainWorker */
+	public DomainWorker worker = null;
+	/* column of the whole world where this one starts, not 0 for the domains of a distributed run */
+	public int originX = 0;
+
+	/* if false the FireController does not write any file at the end of the run (e.g. batch runs) */
+	public boolean writeReport = true;
 
 	public LinkedList<Task> tasks;
+
+	/* distance of each cell from the closest fire, kept up to date by the cells */
+	public FireDistanceField fireField;
+	/* number of cells of each type in any rectangle, kept up to date by the cells */
+	public CellCountIndex cellCounts;
+	/* cells whose type changed, one list for each reader of the changes (e.g. ForestPortrayal2D, StateStreamWriter).
+	 * Cleared by start, readers of a run register after it. */
+	public ArrayList<DirtyCells> dirtyCells = new ArrayList<>();
+
+	/* random streams of the agents and of the cells, derived from the seed at each start */
+	public RandomStreams streams;
+
+	/* time spent in each phase of the run, published through JMX */
+	public PhaseStats stats;
+	/* latency of the decisions of the agents, reported at the end of the run */
+	public DecisionLatencies latencies;
+	/* live metrics endpoint, null unless enabled (see MetricsServer) */
+	public MetricsServer metrics;
         
 	/**
 	 * Constructor
@@ -65,7 +135,7 @@ public class Ignite extends SimState{
 	 * @param Double3D pos, the position to check 
 	 * @return true, if the UAV is in bound
 	 */
-	public static boolean isInBounds(Double3D pos){
+	public boolean isInBounds(Double3D pos){
 		return pos.x >= 0 
 				&& pos.y >= 0 
 				&& pos.z >= 1
@@ -75,28 +145,104 @@ public class Ignite extends SimState{
 	}
         
         public int cellsOnFire() {
-            int ret = 0;
-            for(int w=0; w<width; w++){
-			for(int h=0; h<height; h++){
-				WorldCell cell = (WorldCell) forest.field[w][h];
-                                if(cell.type.equals(CellType.FIRE))
-                                    ret++;
-			}
-		}
-            return ret;
+            return cellCounts.count(CellType.FIRE);
         }
         
         public int cellsSaved() {
-            int ret = 0;
-            for(int w=0; w<width; w++){
-			for(int h=0; h<height; h++){
-				WorldCell cell = (WorldCell) forest.field[w][h];
-                                if(cell.type.equals(CellType.NORMAL) || cell.type.equals(CellType.EXTINGUISHED) )
-                                    ret++;
+            return cellCounts.count(CellType.NORMAL) + cellCounts.count(CellType.EXTINGUISHED);
+        }
+
+	/**
+	 * @return the cell at the given location, in a sparse forest its chunk is created if needed
+	 */
+	public WorldCell cell(int x, int y){
+		return store != null ? store.get(x, y) : (WorldCell) forest.field[x][y];
+	}
+
+	/**
+	 * @return the type of the cell at the given location, without creating any cell
+	 */
+	public CellType typeAt(int x, int y){
+		return store != null ? store.type(x, y) : ((WorldCell) forest.field[x][y]).getType();
+	}
+
+	/**
+	 * @return a store of the given size full of trees, as asked by sparseForest, offHeapForest and mortonForest,
+	 * null if the dense forest has to be used
+	 */
+	public ForestStore createStore(int width, int height){
+		if(offHeapForest){
+			try {
+				return new OffHeapForest(width, height, CellType.NORMAL, offHeapFile == null ? null : new File(offHeapFile));
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to map the forest on " + offHeapFile, e);
 			}
+		} else if(mortonForest){
+			return new MortonForest(width, height, CellType.NORMAL);
+		} else if(sparseForest){
+			return new ChunkedForest(width, height, CellType.NORMAL);
 		}
-            return ret;
-        }
+		return null;
+	}
+
+	/**
+	 * @return a name that tells this simulation apart from the others running in the same JVM
+	 */
+	public String instanceName(){
+		return "Ignite-" + System.identityHashCode(this);
+	}
+
+	/**
+	 * @return the current step of the run, counting also the steps done before the checkpoint
+	 * this run has been restored from (if any)
+	 */
+	public long currentStep(){
+		return schedule.getSteps() + stepOffset;
+	}
+
+	/**
+	 * Called by a cell every time its type changes, used to keep the world-level
+	 * structures (e.g. the fire distance field) up to date.
+	 * @param WorldCell cell, the cell that changed (already holding the new type)
+	 * @param CellType previous, the type of the cell before the change
+	 */
+	public void notifyTypeChange(WorldCell cell, CellType previous){
+		FireTransitionEvent event = new FireTransitionEvent();
+		if(event.shouldCommit()){
+			event.x = cell.x;
+			event.y = cell.y;
+			event.oldType = previous.name();
+			event.newType = cell.getType().name();
+			event.step = currentStep();
+			event.commit();
+		}
+		cellCounts.update(cell.x, cell.y, previous, cell.getType());
+		for(int i=0; i<dirtyCells.size(); i++){
+			dirtyCells.get(i).add(cell.x, cell.y);
+		}
+		if(cell.getType().equals(CellType.FIRE)){
+			fireField.addFire(cell.x, cell.y);
+		} else if(previous.equals(CellType.FIRE)){
+			fireField.removeFire(cell.x, cell.y);
+			//wake up the agents travelling toward this cell
+			for(Object obj : UAVs){
+				((UAV) obj).targetStoppedBurning(this, cell);
+			}
+		}
+	}
+
+	/**
+	 * Store in the air field the current position of all the agents.
+	 * Agents travelling toward their target only update their position when needed,
+	 * call this before reading the air field (e.g. to draw it).
+	 */
+	public void syncAgentLocations(){
+		for(Object obj : UAVs){
+			UAV uav = (UAV) obj;
+			uav.syncTravel();
+			air.setObjectLocation(uav, new Double3D(uav.x, uav.y, uav.z));
+		}
+	}
 
 	/**
 	 * Start a simulation run
@@ -107,146 +253,152 @@ public class Ignite extends SimState{
 		//reset variables for job>1
 		cellsOnFire = 0;
 		cellsBurned = 0;
-		WorldCell.selfIgniteMax = 0;
+		cellsOnWater = 0;
+		selfIgniteMax = 0;
+		messagesSent = 0;
+		taskAuctions = 0;
+		cellAuctions = 0;
+		stepOffset = 0;
+		dirtyCells.clear();
+		streams = new RandomStreams(seed());
+		if(stats != null){
+			stats.unregister();
+		}
+		stats = new PhaseStats(this);
+		stats.register();
+		latencies = new DecisionLatencies();
+		metrics = MetricsServer.fromSystemProperty();
 		
-		air = new Continuous3D(1, width, height, depth);
-		forest = new ObjectGrid2D(width, height);
-                UAVs = new Bag();
-
-		//generate the world
-		//fill the world with trees
-		for(int w=0; w<width; w++){
-			for(int h=0; h<height; h++){
-				WorldCell cell = new WorldCell(w,h, CellType.NORMAL);
-				forest.field[w][h] = cell;
+		if(restoreFrom != null){
+			//continue a previous run
+			try {
+				WorldCheckpoint.restore(this, new File(restoreFrom));
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to restore the checkpoint " + restoreFrom, e);
+			}
+		} else if(rasterFrom != null){
+			//run on a given landscape
+			try {
+				//a domain only loads its own columns
+				WorldRaster.load(this, new File(rasterFrom), originX, worker == null ? -1 : width);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to load the raster " + rasterFrom, e);
 			}
+			air = new Continuous3D(1, width, height, depth);
+			UAVs = new Bag();
+			placeUAVs();
+		} else {
+			generateWorld();
+			placeUAVs();
 		}
 
-		//generate lakes
-		int lakes = 2;
-		for(int l=0; l<lakes; l++){
-			Int2D lakeCenter;
-			Int2D nextLocation;
-			WorldCell cell;
-
-			//try to find a center for the lake
-			int maxTries = width*height;
-			do{
-				lakeCenter = new Int2D(random.nextInt(width), random.nextInt(height));
-				cell = ((WorldCell)forest.field[lakeCenter.x][lakeCenter.y]);
-				maxTries--;
-			}while(cell.type.equals(CellType.WATER) && maxTries>=0);
-
-			//break if not able to find a center after some time
-			if(maxTries < 0){
-				break;
-			}
+		//compute the distance of each cell from the closest fire
+		fireField = new FireDistanceField(width, height);
+		fireField.rebuild(this);
+		cellCounts = new CellCountIndex(width, height);
+		cellCounts.rebuild(this);
 
-			//place the center of the lake
-			cell = new WorldCell(lakeCenter.x, lakeCenter.y, CellType.WATER);
-			forest.field[lakeCenter.x][lakeCenter.y] = cell;
-
-			int radius = 1;
-			//start creating the lake
-			while(radius<=random.nextInt(width)+2 && radius<=random.nextInt(height)+2){
-				for(int i=-radius; i<=radius; i++){
-					for(int j=-radius; j<=radius; j++){
-						nextLocation = new Int2D(lakeCenter.x+i, lakeCenter.y+j); 
-						//place if not already present and if in bounds
-						if(nextLocation.x>=0 && nextLocation.y>=0 && 
-								nextLocation.x<width && nextLocation.y<height){
-							double p = gaussianPDF(Math.sqrt(i*i+j*j),(random.nextInt(3)-1)*random.nextDouble(), 3);
-
-							// if p is too low then there is no water
-							if(p > 0.25){
-								//place water
-								cell = new WorldCell(nextLocation.x, nextLocation.y, CellType.WATER);
-								forest.field[nextLocation.x][nextLocation.y] = cell;
-							}
-						}
+		//schedule all the cells and count them, between the two probes timing them
+		//(fires can overlap each other, so cells on fire are counted here).
+		//The probes have orderings of their own, whatever runs after the cells is scheduled from 5 on
+		schedule.scheduleRepeating(stats.beforeCells, 2, 1);
+		schedule.scheduleRepeating(stats.afterCells, 4, 1);
+		if(store != null){
+			//the store steps its cells by itself
+			cellsOnFire = (int) store.count(CellType.FIRE);
+			cellsBurned = (int) store.count(CellType.BURNED);
+			cellsOnWater = (int) store.count(CellType.WATER);
+			schedule.scheduleRepeating(store, 3, 1);
+		} else {
+			for(int w=0; w<width; w++){
+				for(int h=0; h<height; h++){
+					WorldCell cell = (WorldCell)forest.field[w][h];
+					if(cell.getType().equals(CellType.FIRE)){
+						cellsOnFire++;
+					} else if(cell.getType().equals(CellType.BURNED)){
+						cellsBurned++;
+					} else if(cell.getType().equals(CellType.WATER)){
+						cellsOnWater++;
 					}
+					schedule.scheduleRepeating(cell, 3, 1);
 				}
-				radius++;
 			}
 		}
-
-		//set the world on fire
-		//start with 3 fires and store their centroid in the tasks list
-		tasks = new LinkedList<>();
 		
-		//generate fires
-		int fires = 5;
-		for(int l=0; l<fires; l++){
-			Int2D fireCenter;
-			Int2D nextLocation;
-			WorldCell cell;
-
-			//try to find a center for the lake
-			int maxTries = width*height;
-			do{
-				fireCenter = new Int2D(random.nextInt(width), random.nextInt(height));
-				cell = ((WorldCell)forest.field[fireCenter.x][fireCenter.y]);
-				maxTries--;
-			}while((cell.type.equals(CellType.FIRE) || cell.type.equals(CellType.WATER)) && maxTries>=0);
-
-			//break if not able to find a center after some time
-			if(maxTries < 0){
-				break;
-			}
-
-			//place the center of the fire
-			cell = new WorldCell(fireCenter.x, fireCenter.y, CellType.FIRE);
-			forest.field[fireCenter.x][fireCenter.y] = cell;
-			cellsOnFire++;
-			//generate the task for global knowledge
-			Task t = new Task(new Int2D(fireCenter.x, fireCenter.y), 0);
-			t.addCell(cell);
-			tasks.add(t);
-			
-			int radius = 1;
-
-			//start creating the fire
-			LinkedList<Int2D> extractedLocation = new LinkedList<>();
-			extractedLocation.add(fireCenter);
-			while(radius<=random.nextInt(width)+2 && radius<=random.nextInt(height)+2){
-				for(int i=-radius; i<=radius; i++){
-					for(int j=-radius; j<=radius; j++){
-						nextLocation = new Int2D(fireCenter.x+i, fireCenter.y+j); 
-						//place if not already present and if in bounds
-						if(nextLocation.x>=0 && 
-								nextLocation.y>=0 && 
-								nextLocation.x<width && 
-								nextLocation.y<height &&
-								!extractedLocation.contains(nextLocation)){
-							double p = gaussianPDF(Math.sqrt(i*i+j*j),(random.nextInt(3)-1)*random.nextDouble(), 3);
-
-							// if p is too low then there is no fire
-							if(p > 0.85){
-								//place fire
-								cell = new WorldCell(nextLocation.x, nextLocation.y, CellType.FIRE);
-								forest.field[nextLocation.x][nextLocation.y] = cell;
-								cellsOnFire++;
-								//update the task
-								t.notifyNewFire(cell);
-								//avoid updating more than once
-								extractedLocation.add(nextLocation);
-							}
-						}
-					}
+		//schedule the agents, with event-driven travel each agent schedules its next step by itself
+		if(phasedUAVs){
+			//all together, see UAVPhases
+			schedule.scheduleRepeating(new UAVPhases(), 1, 1);
+		} else {
+			for(Object obj : UAVs){
+				if(eventDrivenTravel){
+					schedule.scheduleOnce((UAV) obj, 1);
+				} else {
+					schedule.scheduleRepeating((UAV) obj, 1, 1);
 				}
-				radius++;
 			}
 		}
 
-		//schedule all the cells
-		for(int w=0; w<width; w++){
-			for(int h=0; h<height; h++){
-				schedule.scheduleRepeating((WorldCell)forest.field[w][h], 2, 1);
+		//schedule the fireContrller, used to check the end of the simulation
+		fireController = new FireController(this);
+		schedule.scheduleRepeating(fireController,5,1);
+
+		//rebuild the tasks from the fires as they are at the end of every relabelTasksPeriod steps
+		if(relabelTasksPeriod > 0){
+			schedule.scheduleRepeating(relabelTasksPeriod - 1, 5, new TaskLabeller(), relabelTasksPeriod);
+		}
+
+		//record the run, after the cells, the agents and the FireController (the step that ends the run is recorded too)
+		stateStream = null;
+		if(streamTo != null){
+			try {
+				stateStream = new StateStreamWriter(this, new File(streamTo), streamKeyframePeriod, streamCompressed);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to write the stream " + streamTo, e);
 			}
+			schedule.scheduleRepeating(stateStream, 6, 1);
 		}
-		
-		//random placement of agents 
-		ArrayList<Double3D> extracted = new ArrayList<Double3D>();
+	}
+
+	/**
+	 * End a simulation run, the FireController writes its report
+	 */
+	public void finish(){
+		super.finish();
+		if(fireController != null){
+			fireController.finish(this);
+		}
+		if(stateStream != null){
+			stateStream.close(this);
+		}
+		if(stats != null){
+			stats.unregister();
+		}
+		if(metrics != null){
+			metrics.remove(instanceName());
+		}
+	}
+
+
+
+	/*
+	 * Generate a random world: trees, lakes and fires (with their tasks), see WorldGenerator.
+	 */
+	private void generateWorld(){
+		air = new Continuous3D(1, width, height, depth);
+                UAVs = new Bag();
+		if(proceduralWorld){
+			WorldGenerator.procedural(this);
+		} else {
+			WorldGenerator.classic(this);
+		}
+	}
+
+	/*
+	 * Random placement of the agents, they are added to the air field.
+	 */
+	private void placeUAVs(){
+		HashSet<Double3D> extracted = new HashSet<Double3D>();
 		Double3D location;
 		for(int i = 0 ; i < numUAVs; i++){
 			do{
@@ -255,21 +407,14 @@ public class Ignite extends SimState{
 			//store extracted location to avoid duplicates
 			extracted.add(location);
 			//generate a new UAV
-			UAV uav = new UAV(i, location);
+			UAV uav = new UAV(i, location, this);
                         //add the UAV to the Bag of UAVs
                         UAVs.add(uav);
 			//add the UAV to air at the location extracted
 			air.setObjectLocation(uav, location);
-			//schedule the agent
-			schedule.scheduleRepeating(uav, 1, 1);
 		}
-
-		//schedule the fireContrller, used to check the end of the simulation
-		FireController fireController = new FireController();
-		schedule.scheduleRepeating(fireController,3,1);
 	}
 
-
 	/**
 	 * PDF
 	 * Compute the value of the gaussian PDF at a given x, with a given mean (location parameter) 
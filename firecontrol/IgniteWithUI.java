@@ -17,43 +17,34 @@ import sim.display.Controller;
 import sim.display.Display2D;
 import sim.display.GUIState;
 import sim.engine.SimState;
+import sim.engine.Steppable;
 import sim.portrayal.DrawInfo2D;
 import sim.portrayal.continuous.Continuous3DPortrayal2D;
-import sim.portrayal.grid.FastObjectGridPortrayal2D;
 import sim.portrayal.simple.CircledPortrayal2D;
 import sim.portrayal.simple.LabelledPortrayal2D;
 import sim.portrayal.simple.OrientedPortrayal2D;
 import sim.portrayal.simple.OvalPortrayal2D;
-import sim.util.gui.SimpleColorMap;
 
 public class IgniteWithUI extends GUIState
 {
 	public Display2D display;
 	public JFrame displayFrame;
 
+	/* with -Dfirecontrol.decoupled=true the model does not wait for the display: it publishes a snapshot
+	 * every snapshotSteps steps or snapshotMillis milliseconds and a SnapshotDisplay draws the latest one */
+	public static final String DECOUPLED_PROPERTY = "firecontrol.decoupled";
+	public boolean decoupled = Boolean.getBoolean(DECOUPLED_PROPERTY);
+	public int snapshotSteps = 10;
+	public long snapshotMillis = 40;
+	public SnapshotDisplay snapshotDisplay;
+
 	public static void main(String[] args){
 		new IgniteWithUI().createController();  // randomizes by currentTimeMillis
 	}
 
 	Continuous3DPortrayal2D airPortrayal = new Continuous3DPortrayal2D();
-	FastObjectGridPortrayal2D cellPortrayal = new FastObjectGridPortrayal2D(){
-		public double doubleValue(Object obj){
-			WorldCell cell = (WorldCell) obj;
-			if(cell.type == CellType.NORMAL || cell.type == CellType.EXTINGUISHED){
-				return 0;
-			}
-			if(cell.type == CellType.FIRE){
-				return 1;
-			}
-			if(cell.type == CellType.BURNED){
-				return 2;
-			}
-			if(cell.type == CellType.WATER){
-				return 3;
-			}
-			return 0;
-		}
-	};
+	//only the cells that changed are drawn again at each repaint
+	ForestPortrayal2D cellPortrayal = new ForestPortrayal2D();
 			
 	public IgniteWithUI(){
 		super(new Ignite(System.currentTimeMillis()));
@@ -70,6 +61,15 @@ public class IgniteWithUI extends GUIState
 	public void start(){
 		super.start();
 		setupPortrayals();
+
+		//travelling agents do not update the air field by themselves
+		scheduleRepeatingImmediatelyAfter(new Steppable(){
+			private static final long serialVersionUID = 1L;
+
+			public void step(SimState state){
+				((Ignite) state).syncAgentLocations();
+			}
+		});
 	}
 
 	public void load(SimState state){
@@ -80,14 +80,16 @@ public class IgniteWithUI extends GUIState
 	public void setupPortrayals(){
 		Ignite ignite= (Ignite)state;
 
-		// set up the cellPortrayal
-		this.cellPortrayal.setField(ignite.forest);
-		Color colors[] = new Color[]{new Color(50,180,20,255), new Color(180,50,20,255), Color.gray, Color.blue};
-		final SimpleColorMap map = new sim.util.gui.SimpleColorMap(colors);
-		cellPortrayal.setMap(map);
-		cellPortrayal.setGridLines(true);
-		cellPortrayal.setGridModulus(1);
-		cellPortrayal.setGridLineFraction(0.025);
+		if(decoupled){
+			//the publisher is stepped after the model, the display draws on its own timer
+			SnapshotPublisher publisher = new SnapshotPublisher(ignite, snapshotSteps, snapshotMillis);
+			scheduleRepeatingImmediatelyAfter(publisher);
+			snapshotDisplay.setSource(publisher.buffers);
+			return;
+		}
+
+		// set up the cellPortrayal, it draws the forest of the simulation whatever its layout
+		this.cellPortrayal.setField(ignite);
 		cellPortrayal.setGridColor(Color.BLACK);
 		
 		// set up the airPortrayal
@@ -116,6 +118,15 @@ public class IgniteWithUI extends GUIState
 	{
 		super.init(c);
 
+		if(decoupled){
+			snapshotDisplay = new SnapshotDisplay(25);
+			displayFrame = snapshotDisplay.createFrame();
+			displayFrame.setTitle("Forest");
+			c.registerFrame(displayFrame);
+			displayFrame.setVisible(true);
+			return;
+		}
+
 		// make the displayer
 		int dispWidth = 750;
 		int dispHeight = 750;
@@ -125,16 +136,19 @@ public class IgniteWithUI extends GUIState
 		c.registerFrame(displayFrame);   // register the frame so it appears in the "Display" list
 		displayFrame.setVisible(true);
 		display.attach( cellPortrayal, "Forest" );
-		display.attach( airPortrayal, "UAVs" , dispWidth/(Ignite.width*2), dispHeight/(Ignite.height*2), true);
+		Ignite ignite = (Ignite) state;
+		display.attach( airPortrayal, "UAVs" , dispWidth/(ignite.width*2), dispHeight/(ignite.height*2), true);
 	}
 
 	public void quit()
 	{
 		super.quit();
 
+		if (snapshotDisplay!=null) snapshotDisplay.stop();
 		if (displayFrame!=null) displayFrame.dispose();
 		displayFrame = null;
 		display = null;
+		snapshotDisplay = null;
 	}
 
 }
@@ -0,0 +1,116 @@
+package sim.app.firecontrol;
+
+import java.util.Locale;
+
+/**
+ * Histogram of latencies (or any non-negative long) with log-linear buckets,
+ * in the spirit of HdrHistogram: values below 64 have their own bucket, larger values
+ * share a bucket with the ones that have the same 6 most significant bits, so the
+ * relative error of a percentile is below 1/32 whatever the magnitude.
+ *
+ * Recording is a couple of shifts and an array increment, without allocation.
+ * A histogram is meant to be recorded by a single thread, histograms of different
+ * threads or runs are combined with add.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT >> 1;
+	//enough buckets for any positive long
+	private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+	private long sum;
+
+	public void record(long value){
+		if(value < 0){
+			value = 0;
+		}
+		counts[index(value)]++;
+		count++;
+		sum += value;
+		if(value > max){
+			max = value;
+		}
+	}
+
+	/**
+	 * Add all the values recorded by other to this.
+	 */
+	public void add(LatencyHistogram other){
+		for(int i=0; i<BUCKETS; i++){
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	public void reset(){
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	public long getCount(){
+		return count;
+	}
+
+	public long getMax(){
+		return max;
+	}
+
+	public double getMean(){
+		return count == 0 ? 0 : sum / (double) count;
+	}
+
+	/**
+	 * @return the smallest value such that the given fraction (0..1) of the recorded
+	 * values is not above it, up to the resolution of the buckets
+	 */
+	public long percentile(double fraction){
+		if(count == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for(int i=0; i<BUCKETS; i++){
+			seen += counts[i];
+			if(seen >= rank){
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return count, mean, p50, p99, p999 and max, values divided by unit (e.g. 1000 to print microseconds)
+	 */
+	public String summary(double unit){
+		return String.format(Locale.US, "count=%d mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f",
+				count, getMean() / unit, percentile(0.5) / unit, percentile(0.99) / unit,
+				percentile(0.999) / unit, max / unit);
+	}
+
+	static int index(long value){
+		if(value < SUB_COUNT){
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		int top = (int) (value >>> shift);
+		return SUB_COUNT + (shift - 1) * HALF_COUNT + (top - HALF_COUNT);
+	}
+
+	/* highest value that falls in the given bucket */
+	static long highestValue(int index){
+		if(index < SUB_COUNT){
+			return index;
+		}
+		int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+		long top = HALF_COUNT + (index - SUB_COUNT) % HALF_COUNT;
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,174 @@
+package sim.app.firecontrol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Optional HTTP endpoint exposing the state of the running simulations in the
+ * Prometheus text format, at http://localhost:<port>/metrics
+ * It is enabled by setting the system property firecontrol.metrics.port, e.g.
+ *
+ *   java -Dfirecontrol.metrics.port=9400 sim.app.firecontrol.BatchRunner ...
+ *
+ * There is one server per JVM, bound to the loopback address only, and every
+ * simulation publishes its own series labelled with sim and seed.
+ * Simulations publish immutable snapshots (see FireController) and the server only
+ * reads the latest one of each simulation, so a scrape never blocks the schedule.
+ */
+public class MetricsServer {
+	public static final String PORT_PROPERTY = "firecontrol.metrics.port";
+
+	/* the state of a simulation at a given step, never modified once published */
+	public static class Snapshot {
+		public final long seed;
+		public final long step;
+		public final int cellsOnFire;
+		public final int cellsBurned;
+		public final int cellsSaved;
+		public final int activeTasks;
+		public final int[] uavsByAction; //indexed by AgentAction.ordinal(), agents with no action are not counted
+		public final long messagesSent;
+		public final double messagesPerSecond;
+		public final double stepsPerSecond;
+
+		public Snapshot(long seed, long step, int cellsOnFire, int cellsBurned, int cellsSaved, int activeTasks,
+				int[] uavsByAction, long messagesSent, double messagesPerSecond, double stepsPerSecond){
+			this.seed = seed;
+			this.step = step;
+			this.cellsOnFire = cellsOnFire;
+			this.cellsBurned = cellsBurned;
+			this.cellsSaved = cellsSaved;
+			this.activeTasks = activeTasks;
+			this.uavsByAction = uavsByAction;
+			this.messagesSent = messagesSent;
+			this.messagesPerSecond = messagesPerSecond;
+			this.stepsPerSecond = stepsPerSecond;
+		}
+	}
+
+	private static MetricsServer shared;
+
+	private final HttpServer server;
+	private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+	private MetricsServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler(){
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = render().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try(OutputStream out = exchange.getResponseBody()){
+					out.write(body);
+				}
+			}
+		});
+		server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "MetricsServer");
+			t.setDaemon(true);
+			return t;
+		}));
+		server.start();
+	}
+
+	/**
+	 * @return the server of this JVM, started on the port given by the system property
+	 * firecontrol.metrics.port, or null if the property is not set or the server cannot start
+	 */
+	public static synchronized MetricsServer fromSystemProperty(){
+		if(shared != null){
+			return shared;
+		}
+		String port = System.getProperty(PORT_PROPERTY);
+		if(port == null || port.isEmpty()){
+			return null;
+		}
+		try {
+			shared = new MetricsServer(Integer.parseInt(port));
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("Exception in MetricsServer.fromSystemProperty() " + e.toString());
+		}
+		return shared;
+	}
+
+	public void publish(String sim, Snapshot snapshot){
+		snapshots.put(sim, snapshot);
+	}
+
+	public void remove(String sim){
+		snapshots.remove(sim);
+	}
+
+	public void stop(){
+		server.stop(0);
+	}
+
+	/**
+	 * @return all the snapshots in the Prometheus text exposition format
+	 */
+	public String render(){
+		StringBuilder sb = new StringBuilder();
+		gauge(sb, "firecontrol_step", "Current step of the simulation", s -> s.step);
+		gauge(sb, "firecontrol_cells_on_fire", "Cells on fire", s -> s.cellsOnFire);
+		gauge(sb, "firecontrol_cells_burned", "Cells burned", s -> s.cellsBurned);
+		gauge(sb, "firecontrol_cells_saved", "Cells not on fire, burned or water", s -> s.cellsSaved);
+		gauge(sb, "firecontrol_active_tasks", "Tasks with at least a cell on fire", s -> s.activeTasks);
+		gauge(sb, "firecontrol_steps_per_second", "Steps per second since the previous snapshot", s -> s.stepsPerSecond);
+		gauge(sb, "firecontrol_messages_per_second", "Messages per second since the previous snapshot", s -> s.messagesPerSecond);
+
+		header(sb, "firecontrol_messages_sent_total", "Packets delivered from one UAV to another", "counter");
+		for(Map.Entry<String, Snapshot> e : snapshots.entrySet()){
+			sample(sb, "firecontrol_messages_sent_total", labels(e), e.getValue().messagesSent);
+		}
+
+		header(sb, "firecontrol_uavs", "UAVs by last action", "gauge");
+		for(Map.Entry<String, Snapshot> e : snapshots.entrySet()){
+			for(AgentAction action : AgentAction.values()){
+				sample(sb, "firecontrol_uavs", labels(e) + ",action=\"" + action + "\"",
+						e.getValue().uavsByAction[action.ordinal()]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private interface Value {
+		double of(Snapshot snapshot);
+	}
+
+	private void gauge(StringBuilder sb, String name, String help, Value value){
+		header(sb, name, help, "gauge");
+		for(Map.Entry<String, Snapshot> e : snapshots.entrySet()){
+			sample(sb, name, labels(e), value.of(e.getValue()));
+		}
+	}
+
+	private static void header(StringBuilder sb, String name, String help, String type){
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, String labels, double value){
+		sb.append(name).append('{').append(labels).append("} ");
+		if(value == Math.rint(value) && !Double.isInfinite(value)){
+			sb.append((long) value);
+		} else {
+			sb.append(String.format(Locale.US, "%.3f", value));
+		}
+		sb.append('\n');
+	}
+
+	private static String labels(Map.Entry<String, Snapshot> e){
+		return "sim=\"" + e.getKey() + "\",seed=\"" + e.getValue().seed + "\"";
+	}
+}
@@ -0,0 +1,243 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import sim.engine.SimState;
+
+/**
+ * Forest laid out for cache-friendly neighbor access, used instead of the dense ObjectGrid2D
+ * when Ignite.mortonForest is set.
+ *
+ * Type (with the enhanced flag) and status of the cells are primitive arrays split in tiles of
+ * TILE x TILE cells, cells of a tile follow the Z-order (Morton) curve: the 3x3 neighborhood of
+ * a cell is almost always in the same few cache lines, while in ObjectGrid2D.field the cells
+ * above and below are in other arrays and every cell is an object of its own.
+ * The world is padded with a ghost border of one cell, so the fire spreading in MortonForest.Cell
+ * reaches all the 8 neighbors without checking the bounds of the world.
+ *
+ * As in OffHeapForest, cells handed out by get are views and the forest is scheduled as a
+ * single Steppable that skips the cells with nothing to do, the others are stepped in a random
+ * order as the cells of a dense forest (see SteppedCells).
+ */
+public class MortonForest implements ForestStore{
+	private static final long serialVersionUID = 1L;
+
+	public static final int TILE = 64;
+	private static final int TILE_BITS = 6;
+	private static final int TILE_CELLS = TILE * TILE;
+
+	private static final int ENHANCED = 0x80;
+	private static final int TYPE = 0x7f;
+	//type of the cells of the border and of the padding of the last tiles
+	private static final int GHOST = 0x7f;
+
+	private static final CellType[] TYPES = CellType.values();
+	private static final int NORMAL = CellType.NORMAL.ordinal();
+	private static final int FIRE = CellType.FIRE.ordinal();
+
+	//bits of a coordinate in a tile spread to the even bits of the Morton code, and back
+	private static final int[] SPREAD = new int[TILE];
+	private static final int[] LOCAL_X = new int[TILE_CELLS];
+	private static final int[] LOCAL_Y = new int[TILE_CELLS];
+	static {
+		for(int i=0; i<TILE; i++){
+			for(int b=0; b<TILE_BITS; b++){
+				SPREAD[i] |= ((i >> b) & 1) << (2 * b);
+			}
+		}
+		for(int x=0; x<TILE; x++){
+			for(int y=0; y<TILE; y++){
+				LOCAL_X[SPREAD[x] | SPREAD[y] << 1] = x;
+				LOCAL_Y[SPREAD[x] | SPREAD[y] << 1] = y;
+			}
+		}
+	}
+
+	public final int width;
+	public final int height;
+	//tiles along y of the padded world
+	private final int tilesY;
+	private final byte[] types;
+	private final double[] status;
+	//task of the cells that belong to one, by index
+	private final HashMap<Integer, Task> tasks = new HashMap<>();
+	//cells to step in the current step, see SteppedCells
+	private final SteppedCells stepped;
+
+	public MortonForest(int width, int height, CellType type){
+		this.width = width;
+		this.height = height;
+		this.stepped = new SteppedCells(width, height);
+		int tilesX = (width + 2 + TILE - 1) / TILE;
+		this.tilesY = (height + 2 + TILE - 1) / TILE;
+		this.types = new byte[tilesX * tilesY * TILE_CELLS];
+		this.status = new double[types.length];
+		Arrays.fill(types, (byte) GHOST);
+		Arrays.fill(status, 1);
+		for(int x=0; x<width; x++){
+			for(int y=0; y<height; y++){
+				types[index(x, y)] = (byte) type.ordinal();
+			}
+		}
+	}
+
+	/*
+	 * Index of the cell (x,y) of the world, the ghost border is at -1 and at width (height).
+	 */
+	private int index(int x, int y){
+		int px = x + 1;
+		int py = y + 1;
+		int tile = (px >> TILE_BITS) * tilesY + (py >> TILE_BITS);
+		return tile << (2 * TILE_BITS) | SPREAD[px & (TILE - 1)] | SPREAD[py & (TILE - 1)] << 1;
+	}
+
+	@Override
+	public CellType type(int x, int y){
+		return TYPES[types[index(x, y)] & TYPE];
+	}
+
+	@Override
+	public WorldCell get(int x, int y){
+		return new Cell(this, x, y);
+	}
+
+	@Override
+	public WorldCell peek(int x, int y){
+		return get(x, y);
+	}
+
+	@Override
+	public void set(int x, int y, CellType type){
+		int i = index(x, y);
+		types[i] = (byte) ((types[i] & ENHANCED) | type.ordinal());
+	}
+
+	@Override
+	public long count(CellType type){
+		long count = 0;
+		for(byte b : types){
+			if((b & TYPE) == type.ordinal()){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Step the cells that have something to do (see OffHeapForest.step), found tile by tile
+	 * following the Morton order inside each tile and stepped in a random order (see SteppedCells).
+	 */
+	@Override
+	public void step(SimState state){
+		Ignite ignite = (Ignite) state;
+		long step = ignite.currentStep();
+		boolean selfIgnite = ignite.selfIgniteMax > 0 && step != 0 && step % 500 == 0;
+		stepped.clear();
+		for(int i=0; i<types.length; i++){
+			int b = types[i];
+			int type = b & TYPE;
+			if(type != FIRE && type != NORMAL){
+				if((b & ENHANCED) != 0){
+					types[i] = (byte) type;
+				}
+				continue;
+			}
+			int tile = i >> (2 * TILE_BITS);
+			int x = (tile / tilesY) * TILE + LOCAL_X[i & (TILE_CELLS - 1)] - 1;
+			int y = (tile % tilesY) * TILE + LOCAL_Y[i & (TILE_CELLS - 1)] - 1;
+			if(type == FIRE){
+				stepped.addFire(x, y);
+			} else if((b & ENHANCED) != 0 || status[i] < WorldCell.statusThreshold){
+				stepped.add(x, y);
+			} else if(selfIgnite){
+				//out of the reach of the fires in this step, its place in the order does not matter
+				new Cell(this, x, y).step(ignite);
+			}
+		}
+		int count = stepped.shuffle(ignite.random);
+		for(int i=0; i<count; i++){
+			new Cell(this, stepped.x(i), stepped.y(i)).step(ignite);
+		}
+	}
+
+	/*
+	 * View of a cell, all its state is in the forest.
+	 */
+	private static class Cell extends WorldCell{
+		private static final long serialVersionUID = 1L;
+		private final MortonForest forest;
+		private final int index;
+
+		Cell(MortonForest forest, int x, int y){
+			super(x, y, null);
+			this.forest = forest;
+			this.index = forest.index(x, y);
+		}
+
+		@Override
+		public CellType getType(){
+			return TYPES[forest.types[index] & TYPE];
+		}
+
+		@Override
+		public void setType(CellType type){
+			forest.types[index] = (byte) ((forest.types[index] & ENHANCED) | type.ordinal());
+		}
+
+		@Override
+		public double getStatus(){
+			return forest.status[index];
+		}
+
+		@Override
+		public void setStatus(double status){
+			forest.status[index] = status;
+		}
+
+		@Override
+		public boolean isEnhanced(){
+			return (forest.types[index] & ENHANCED) != 0;
+		}
+
+		@Override
+		public void setEnhanced(boolean enhanced){
+			forest.types[index] = (byte) (enhanced ? forest.types[index] | ENHANCED : forest.types[index] & TYPE);
+		}
+
+		@Override
+		public Task getTask(){
+			return forest.tasks.get(index);
+		}
+
+		@Override
+		public void setTask(Task task){
+			if(task == null){
+				forest.tasks.remove(index);
+			} else {
+				forest.tasks.put(index, task);
+			}
+		}
+
+		/*
+		 * Same as WorldCell.spreadFire on the primitive arrays: the ghost border is
+		 * never NORMAL, so there is no need to check the bounds of the world.
+		 */
+		@Override
+		void spreadFire(Ignite ignite){
+			long step = ignite.currentStep();
+			byte[] types = forest.types;
+			double[] status = forest.status;
+			for(int i=-1; i<=1; i++){
+				for(int j=-1; j<=1; j++){
+					int n = forest.index(x + i, y + j);
+					if(types[n] == NORMAL){
+						//not enhanced yet in this step
+						status[n] -= normalStatusMultiplier*ignite.gaussianPDF(0, 2*ignite.streams.cell(step, x + i, y + j, RandomStreams.SPREAD), 0.2);
+						types[n] = (byte) (NORMAL | ENHANCED);
+					}
+				}
+			}
+		}
+	}
+}
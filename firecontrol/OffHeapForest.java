@@ -0,0 +1,240 @@
+package sim.app.firecontrol;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import sim.engine.SimState;
+
+/**
+ * Forest kept out of the Java heap, used instead of the dense ObjectGrid2D when Ignite.offHeapForest is set.
+ *
+ * Type (with the enhanced flag) and status of every cell are stored in direct buffers, one byte
+ * and one double per cell, or in a file mapped in memory when Ignite.offHeapFile is set. Direct
+ * buffers are bounded by -XX:MaxDirectMemorySize (by default as large as the heap), mapped files
+ * only by the disk, so maps larger than the heap can run. Cells handed out by get are views:
+ * a few bytes each, created on demand and garbage right after, so the heap (and GC time) does
+ * not grow with the world. Only the tasks of the cells on fire are kept on the heap.
+ *
+ * The forest is scheduled as a single Steppable. Cells that would not do anything in
+ * WorldCell.step (e.g. trees far from the fires) are skipped without creating their view,
+ * the others are stepped in a random order as the cells of a dense forest (see SteppedCells).
+ */
+public class OffHeapForest implements ForestStore{
+	private static final long serialVersionUID = 1L;
+
+	//cells are stored in windows of whole columns, of at most this many cells
+	private static final int WINDOW = 1 << 27;
+	private static final int ENHANCED = 0x80;
+	private static final int TYPE = 0x7f;
+
+	private static final CellType[] TYPES = CellType.values();
+	private static final int NORMAL = CellType.NORMAL.ordinal();
+	private static final int FIRE = CellType.FIRE.ordinal();
+
+	public final int width;
+	public final int height;
+	//columns of each window
+	private final int columns;
+	//type ordinal | ENHANCED of each cell (x%columns)*height+y of the window x/columns
+	private final ByteBuffer[] types;
+	private final DoubleBuffer[] status;
+	//task of the cells that belong to one, by index x*height+y
+	private final HashMap<Long, Task> tasks = new HashMap<>();
+	//cells to step in the current step, see SteppedCells
+	private final SteppedCells stepped;
+
+	/**
+	 * A forest of the given type in direct buffers if file is null, mapped on file otherwise
+	 * (the file is overwritten).
+	 */
+	public OffHeapForest(int width, int height, CellType type, File file) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.stepped = new SteppedCells(width, height);
+		this.columns = Math.max(1, WINDOW / height);
+		int windows = (width + columns - 1) / columns;
+		this.types = new ByteBuffer[windows];
+		this.status = new DoubleBuffer[windows];
+
+		FileChannel channel = file == null ? null : FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long cells = (long) width * height;
+			byte[] typeColumn = new byte[height];
+			double[] statusColumn = new double[height];
+			Arrays.fill(typeColumn, (byte) type.ordinal());
+			Arrays.fill(statusColumn, 1);
+			for(int w=0; w<windows; w++){
+				int count = Math.min(columns, width - w * columns);
+				long first = (long) w * columns * height;
+				int size = count * height;
+				ByteBuffer t;
+				ByteBuffer s;
+				if(channel == null){
+					t = ByteBuffer.allocateDirect(size);
+					s = ByteBuffer.allocateDirect(8 * size);
+				} else {
+					//mappings stay valid after the channel is closed
+					t = channel.map(FileChannel.MapMode.READ_WRITE, first, size);
+					s = channel.map(FileChannel.MapMode.READ_WRITE, cells + 8 * first, 8L * size);
+				}
+				types[w] = t;
+				status[w] = s.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				for(int c=0; c<count; c++){
+					t.put(typeColumn);
+					status[w].put(statusColumn);
+				}
+			}
+		} finally {
+			if(channel != null){
+				channel.close();
+			}
+		}
+	}
+
+	@Override
+	public CellType type(int x, int y){
+		return TYPES[types[x / columns].get(offset(x, y)) & TYPE];
+	}
+
+	@Override
+	public WorldCell get(int x, int y){
+		return new Cell(this, x, y);
+	}
+
+	@Override
+	public WorldCell peek(int x, int y){
+		return get(x, y);
+	}
+
+	@Override
+	public void set(int x, int y, CellType type){
+		setType(x, y, type);
+	}
+
+	@Override
+	public long count(CellType type){
+		long count = 0;
+		for(ByteBuffer t : types){
+			for(int i=0; i<t.capacity(); i++){
+				if((t.get(i) & TYPE) == type.ordinal()){
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Step the cells that have something to do: cells on fire, trees about to take fire and,
+	 * when fires can start by themselves, all the trees. The others only lose their enhanced flag,
+	 * as they do at the beginning of WorldCell.step. Cells in reach of the fires are stepped in a
+	 * random order (see SteppedCells), the other trees only draw for starting a fire by themselves.
+	 */
+	@Override
+	public void step(SimState state){
+		Ignite ignite = (Ignite) state;
+		long step = ignite.currentStep();
+		boolean selfIgnite = ignite.selfIgniteMax > 0 && step != 0 && step % 500 == 0;
+		stepped.clear();
+		for(int x=0; x<width; x++){
+			ByteBuffer t = types[x / columns];
+			DoubleBuffer s = status[x / columns];
+			int base = (x % columns) * height;
+			for(int y=0; y<height; y++){
+				int b = t.get(base + y);
+				int type = b & TYPE;
+				if(type == FIRE){
+					stepped.addFire(x, y);
+				} else if(type == NORMAL && ((b & ENHANCED) != 0 || s.get(base + y) < WorldCell.statusThreshold)){
+					stepped.add(x, y);
+				} else if(type == NORMAL && selfIgnite){
+					//out of the reach of the fires in this step, its place in the order does not matter
+					new Cell(this, x, y).step(ignite);
+				} else if((b & ENHANCED) != 0){
+					t.put(base + y, (byte) type);
+				}
+			}
+		}
+		int count = stepped.shuffle(ignite.random);
+		for(int i=0; i<count; i++){
+			new Cell(this, stepped.x(i), stepped.y(i)).step(ignite);
+		}
+	}
+
+	private int offset(int x, int y){
+		return (x % columns) * height + y;
+	}
+
+	private void setType(int x, int y, CellType type){
+		ByteBuffer t = types[x / columns];
+		int i = offset(x, y);
+		t.put(i, (byte) ((t.get(i) & ENHANCED) | type.ordinal()));
+	}
+
+	/*
+	 * View of a cell, all its state is in the forest.
+	 */
+	private static class Cell extends WorldCell{
+		private static final long serialVersionUID = 1L;
+		private final OffHeapForest forest;
+
+		Cell(OffHeapForest forest, int x, int y){
+			super(x, y, null);
+			this.forest = forest;
+		}
+
+		@Override
+		public CellType getType(){
+			return forest.type(x, y);
+		}
+
+		@Override
+		public void setType(CellType type){
+			forest.setType(x, y, type);
+		}
+
+		@Override
+		public double getStatus(){
+			return forest.status[x / forest.columns].get(forest.offset(x, y));
+		}
+
+		@Override
+		public void setStatus(double status){
+			forest.status[x / forest.columns].put(forest.offset(x, y), status);
+		}
+
+		@Override
+		public boolean isEnhanced(){
+			return (forest.types[x / forest.columns].get(forest.offset(x, y)) & ENHANCED) != 0;
+		}
+
+		@Override
+		public void setEnhanced(boolean enhanced){
+			ByteBuffer t = forest.types[x / forest.columns];
+			int i = forest.offset(x, y);
+			t.put(i, (byte) (enhanced ? t.get(i) | ENHANCED : t.get(i) & TYPE));
+		}
+
+		@Override
+		public Task getTask(){
+			return forest.tasks.get((long) x * forest.height + y);
+		}
+
+		@Override
+		public void setTask(Task task){
+			if(task == null){
+				forest.tasks.remove((long) x * forest.height + y);
+			} else {
+				forest.tasks.put((long) x * forest.height + y, task);
+			}
+		}
+	}
+}
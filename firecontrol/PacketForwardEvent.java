@@ -0,0 +1,89 @@
+package sim.app.firecontrol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for a packet copied by a UAV to be forwarded to the agents in range.
+ * Disabled unless the recording uses firecontrol.jfc.
+ */
+@Name("sim.app.firecontrol.PacketForward")
+@Label("Packet Forward")
+@Category({"Fire Control", "Protocol"})
+@Description("A packet copied by a UAV to flood it over the network")
+@Enabled(false)
+public class PacketForwardEvent extends Event {
+	@Label("Protocol")
+	@Description("TASK or CELL")
+	public String protocol;
+
+	@Label("Packet Type")
+	public String packetType;
+
+	@Label("UAV")
+	@Description("Id of the UAV forwarding the packet")
+	public int uav;
+
+	@Label("Sender")
+	@Description("Id of the UAV the packet comes from")
+	public int sender;
+
+	@Label("Visited")
+	@Description("UAVs already visited by the packet")
+	public int visited;
+
+	@Label("Payload UAVs")
+	public int payloadUAVs;
+
+	@Label("Payload Bids")
+	public int payloadBids;
+
+	@Label("Payload Awards")
+	public int payloadAwards;
+
+	@Label("Payload Entries")
+	@Description("All the entries copied with the payload")
+	public int payloadEntries;
+
+	/**
+	 * @param sender the UAV the packet has been received from, the copy has uav as its sender
+	 */
+	public static void commit(UAV uav, UAV sender, TaskDataPacket packet){
+		PacketForwardEvent event = new PacketForwardEvent();
+		if(event.shouldCommit()){
+			event.protocol = "TASK";
+			event.packetType = packet.header.type.name();
+			event.uav = uav.id;
+			event.sender = sender.id;
+			event.visited = packet.header.visitedUAVs.size();
+			event.payloadUAVs = packet.payload.UAVs.size();
+			event.payloadBids = packet.payload.bids.size();
+			event.payloadAwards = packet.payload.awards.size();
+			event.payloadEntries = packet.payload.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param sender the UAV the packet has been received from, the copy has uav as its sender
+	 */
+	public static void commit(UAV uav, UAV sender, CellDataPacket packet){
+		PacketForwardEvent event = new PacketForwardEvent();
+		if(event.shouldCommit()){
+			event.protocol = "CELL";
+			event.packetType = packet.header.type.name();
+			event.uav = uav.id;
+			event.sender = sender.id;
+			event.visited = packet.header.visitedUAVs.size();
+			event.payloadUAVs = packet.payload.UAVs.size();
+			event.payloadBids = packet.payload.bids.size();
+			event.payloadAwards = packet.payload.awards.size();
+			event.payloadEntries = packet.payload.size();
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package sim.app.firecontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * Where the time of a run goes: number of calls and nanoseconds spent in each phase
+ * of the simulation, published through JMX (see PhaseStatsMXBean).
+ *
+ * Counters are striped LongAdders, so recording never takes a lock and stays cheap
+ * even if agents are stepped in parallel. Phases:
+ * - FIRE_PROPAGATION, all the WorldCell.step of a step, timed once per step by two
+ *   probes scheduled around the cells (see Ignite.start) rather than once per cell
+ * - TASK_AUCTION and CELL_AUCTION, UAV.selectTask and UAV.selectCell
+ * - FLOODING, the part of the auctions spent flooding packets over the network
+ *   (taskSendData/cellSendData hops), also included in the auction times
+ * - MOVE, UAV.move or, with event-driven travel, the planning of the travel
+ * - DECIDE, the parallel decide phase of the UAVs when they are stepped by UAVPhases
+ *
+ * The MBean server keeps the stats registered until Ignite.finish, the simulation is only held
+ * weakly: a simulation started and never finished can still be collected, its stats then read as
+ * zero and are unregistered at the first read.
+ */
+public class PhaseStats implements PhaseStatsMXBean {
+	public enum Phase { FIRE_PROPAGATION, TASK_AUCTION, CELL_AUCTION, FLOODING, MOVE, DECIDE }
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final WeakReference<Ignite> ignite;
+	private final LongAdder[] calls = new LongAdder[PHASES.length];
+	private final LongAdder[] nanos = new LongAdder[PHASES.length];
+	private final LongAdder packetCopies = new LongAdder();
+	private final LongAdder copiedPayloadEntries = new LongAdder();
+	private ObjectName name;
+
+	//start of the fire propagation of the current step
+	private long cellsStartedAt;
+
+	/* scheduled just before the cells */
+	public final Steppable beforeCells = new Steppable(){
+		public void step(SimState state){
+			cellsStartedAt = System.nanoTime();
+		}
+	};
+
+	/* scheduled just after the cells */
+	public final Steppable afterCells = new Steppable(){
+		public void step(SimState state){
+			record(Phase.FIRE_PROPAGATION, cellsStartedAt);
+		}
+	};
+
+	public PhaseStats(Ignite ignite){
+		this.ignite = new WeakReference<>(ignite);
+		for(int p=0; p<PHASES.length; p++){
+			calls[p] = new LongAdder();
+			nanos[p] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Account one call of the given phase, started at startedAt (System.nanoTime).
+	 */
+	public void record(Phase phase, long startedAt){
+		calls[phase.ordinal()].increment();
+		nanos[phase.ordinal()].add(System.nanoTime() - startedAt);
+	}
+
+	/**
+	 * A packet has been copied to be forwarded, with the given number of entries
+	 * (agents, tasks, bids and awards) in its payload.
+	 */
+	public void packetCopied(int payloadEntries){
+		packetCopies.increment();
+		copiedPayloadEntries.add(payloadEntries);
+	}
+
+	/**
+	 * Make the stats visible through JMX, each simulation in the JVM has its own name.
+	 */
+	public void register(){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			name = new ObjectName("sim.app.firecontrol:type=PhaseStats,name=" + ignite.get().instanceName());
+			if(!server.isRegistered(name)){
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			System.err.println("Exception in PhaseStats.register() " + e.toString());
+			name = null;
+		}
+	}
+
+	public void unregister(){
+		if(name == null){
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException e) {
+			System.err.println("Exception in PhaseStats.unregister() " + e.toString());
+		}
+		name = null;
+	}
+
+	/*
+	 * The simulation, null (and the stats unregistered) if it has been collected.
+	 */
+	private Ignite ignite(){
+		Ignite ret = ignite.get();
+		if(ret == null){
+			unregister();
+		}
+		return ret;
+	}
+
+	public long getSteps(){
+		Ignite ignite = ignite();
+		return ignite == null ? 0 : ignite.schedule.getSteps();
+	}
+
+	public Map<String, Long> getCalls(){
+		Map<String, Long> ret = new LinkedHashMap<>();
+		for(Phase p : PHASES){
+			ret.put(p.name(), calls[p.ordinal()].sum());
+		}
+		return ret;
+	}
+
+	public Map<String, Long> getTotalNanos(){
+		Map<String, Long> ret = new LinkedHashMap<>();
+		for(Phase p : PHASES){
+			ret.put(p.name(), nanos[p.ordinal()].sum());
+		}
+		return ret;
+	}
+
+	public Map<String, Double> getNanosPerStep(){
+		long steps = getSteps();
+		Map<String, Double> ret = new LinkedHashMap<>();
+		for(Phase p : PHASES){
+			ret.put(p.name(), steps == 0 ? 0.0 : nanos[p.ordinal()].sum() / (double) steps);
+		}
+		return ret;
+	}
+
+	public Map<String, Double> getNanosPerCall(){
+		Map<String, Double> ret = new LinkedHashMap<>();
+		for(Phase p : PHASES){
+			long c = calls[p.ordinal()].sum();
+			ret.put(p.name(), c == 0 ? 0.0 : nanos[p.ordinal()].sum() / (double) c);
+		}
+		return ret;
+	}
+
+	public long getAuctions(){
+		Ignite ignite = ignite();
+		return ignite == null ? 0 : ignite.taskAuctions + ignite.cellAuctions;
+	}
+
+	public double getMessagesPerAuction(){
+		Ignite ignite = ignite();
+		long auctions = getAuctions();
+		return ignite == null || auctions == 0 ? 0.0 : ignite.messagesSent / (double) auctions;
+	}
+
+	public long getPacketCopies(){
+		return packetCopies.sum();
+	}
+
+	public long getCopiedPayloadEntries(){
+		return copiedPayloadEntries.sum();
+	}
+
+	public void reset(){
+		for(int p=0; p<PHASES.length; p++){
+			calls[p].reset();
+			nanos[p].reset();
+		}
+		packetCopies.reset();
+		copiedPayloadEntries.reset();
+	}
+}
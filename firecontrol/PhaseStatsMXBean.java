@@ -0,0 +1,21 @@
+package sim.app.firecontrol;
+
+import java.util.Map;
+
+/**
+ * Management interface of PhaseStats, see the JMX domain sim.app.firecontrol
+ * (e.g. with jconsole) while a simulation is running.
+ * Maps are keyed by phase name.
+ */
+public interface PhaseStatsMXBean {
+	public long getSteps();
+	public Map<String, Long> getCalls();
+	public Map<String, Long> getTotalNanos();
+	public Map<String, Double> getNanosPerStep();
+	public Map<String, Double> getNanosPerCall();
+	public long getAuctions();
+	public double getMessagesPerAuction();
+	public long getPacketCopies();
+	public long getCopiedPayloadEntries();
+	public void reset();
+}
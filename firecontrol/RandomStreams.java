@@ -0,0 +1,72 @@
+package sim.app.firecontrol;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Source of the random numbers used by the simulation.
+ *
+ * Every agent stream is derived from the seed of the simulation and from a (subsystem, id) pair
+ * through SplitMix64 mixing, so each agent draws from its own generator, independent of how many
+ * numbers the others have drawn.
+ * Cells do not draw from streams: each draw of a cell is a counter-based value, the SplitMix64 mix of
+ * the seed, the step, the coordinates of the cell and the kind of draw. The numbers a cell gets do not
+ * depend on the order the cells are stepped in nor on how they are split among threads. A fire
+ * lowering the status of a neighbor draws with the coordinates of the neighbor, so the amount does not
+ * depend on which of the fires around it gets there first.
+ *
+ * The world generation and the schedule keep using SimState.random, that is seeded the same way.
+ */
+public class RandomStreams {
+	//subsystems
+	public static final long UAVS = 1;
+	public static final long CELLS = 2;
+
+	//draws of a cell in a step
+	public static final int BURN = 0;
+	public static final int SPREAD = 1;
+	public static final int IGNITE = 2;
+
+	private final long seed;
+	private final long cellSeed;
+
+	public RandomStreams(long seed){
+		this.seed = seed;
+		this.cellSeed = mix(seed + CELLS * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * @return a new stream for the given subsystem and id, always the same for the same seed
+	 */
+	public MersenneTwisterFast stream(long subsystem, long id){
+		return new MersenneTwisterFast(mix(mix(seed + subsystem * GOLDEN_GAMMA) + id * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return the stream of the UAV with the given id
+	 */
+	public MersenneTwisterFast uav(int id){
+		return stream(UAVS, id);
+	}
+
+	/**
+	 * @return a uniform number in [0,1) for the given draw (BURN, SPREAD, IGNITE) of the cell (x,y)
+	 * at the given step, always the same for the same seed
+	 */
+	public double cell(long step, int x, int y, int draw){
+		long z = mix(cellSeed + step * GOLDEN_GAMMA);
+		z = mix(z + (((long) x << 32) | (y & 0xffffffffL)) * GOLDEN_GAMMA);
+		z = mix(z + draw * GOLDEN_GAMMA);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * SplitMix64 finalizer: close inputs give unrelated outputs.
+	 */
+	public static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,50 @@
+package sim.app.firecontrol;
+
+/**
+ * The snapshots handed from a writer (e.g. SnapshotPublisher) to a reader (e.g. SnapshotDisplay) on another thread.
+ * Three snapshots are recycled: the latest one, the one held by the reader and the one being written,
+ * so the writer never waits for the reader and the reader always gets the latest complete snapshot,
+ * older ones are dropped.
+ */
+public class SnapshotBuffers {
+	private final WorldSnapshot[] snapshots = new WorldSnapshot[3];
+	private WorldSnapshot latest = null;
+	private WorldSnapshot held = null;
+
+	public SnapshotBuffers(int width, int height){
+		for(int i=0; i<snapshots.length; i++){
+			snapshots[i] = new WorldSnapshot(width, height);
+		}
+	}
+
+	/**
+	 * @return a snapshot to be written and then published, neither the latest nor held by the reader
+	 */
+	public synchronized WorldSnapshot free(){
+		for(WorldSnapshot s : snapshots){
+			if(s != latest && s != held){
+				return s;
+			}
+		}
+		//never happens with three snapshots
+		throw new IllegalStateException("No free snapshot");
+	}
+
+	public synchronized void publish(WorldSnapshot snapshot){
+		latest = snapshot;
+	}
+
+	/**
+	 * @return the latest snapshot, to be given back with release before acquiring another one, null if none
+	 */
+	public synchronized WorldSnapshot acquire(){
+		held = latest;
+		return held;
+	}
+
+	public synchronized void release(WorldSnapshot snapshot){
+		if(held == snapshot){
+			held = null;
+		}
+	}
+}
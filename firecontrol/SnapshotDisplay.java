@@ -0,0 +1,122 @@
+package sim.app.firecontrol;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.Timer;
+
+/**
+ * Display of the snapshots of a SnapshotPublisher (or of a StateStreamPlayer), repainted by a Swing timer
+ * at its own rate: the simulation never waits for it, snapshots published between two repaints are not drawn.
+ */
+public class SnapshotDisplay extends JComponent{
+	private static final long serialVersionUID = 1L;
+
+	//color of each CellType, by ordinal (as in ForestPortrayal2D)
+	private final int[] colors = new int[CellType.values().length];
+
+	private volatile SnapshotBuffers source;
+	private final Timer timer;
+
+	private BufferedImage image;
+	private int[] pixels;
+	//step of the snapshot in the image, -1 if none
+	private long drawnStep = -1;
+	private String status = "";
+
+	public SnapshotDisplay(int framesPerSecond){
+		colors[CellType.NORMAL.ordinal()] = new Color(50,180,20).getRGB();
+		colors[CellType.EXTINGUISHED.ordinal()] = new Color(50,180,20).getRGB();
+		colors[CellType.FIRE.ordinal()] = new Color(180,50,20).getRGB();
+		colors[CellType.BURNED.ordinal()] = Color.gray.getRGB();
+		colors[CellType.WATER.ordinal()] = Color.blue.getRGB();
+		setPreferredSize(new Dimension(750, 750));
+		timer = new Timer(1000 / framesPerSecond, new ActionListener(){
+			public void actionPerformed(ActionEvent e){
+				repaint();
+			}
+		});
+		timer.start();
+	}
+
+	/**
+	 * Draw the snapshots published in other buffers, e.g. after the simulation has been restarted.
+	 */
+	public void setSource(SnapshotBuffers source){
+		this.source = source;
+		this.drawnStep = -1;
+	}
+
+	public void stop(){
+		timer.stop();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g){
+		Graphics2D graphics = (Graphics2D) g;
+		graphics.setColor(new Color(255,242,223));
+		graphics.fillRect(0, 0, getWidth(), getHeight());
+		SnapshotBuffers source = this.source;
+		if(source == null){
+			return;
+		}
+		WorldSnapshot snapshot = source.acquire();
+		if(snapshot == null){
+			return;
+		}
+		try {
+			if(image == null || image.getWidth() != snapshot.width || image.getHeight() != snapshot.height){
+				image = new BufferedImage(snapshot.width, snapshot.height, BufferedImage.TYPE_INT_RGB);
+				pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+				drawnStep = -1;
+			}
+			if(snapshot.step != drawnStep){
+				int width = snapshot.width;
+				int height = snapshot.height;
+				byte[] types = snapshot.types;
+				for(int x=0; x<width; x++){
+					for(int y=0; y<height; y++){
+						pixels[y * width + x] = colors[types[x * height + y]];
+					}
+				}
+				drawnStep = snapshot.step;
+				status = "step " + snapshot.step + ", cells on fire " + snapshot.cellsOnFire + ", cells burned " + snapshot.cellsBurned;
+			}
+
+			//keep the cells square
+			double cell = Math.min(getWidth() / (double) snapshot.width, getHeight() / (double) snapshot.height);
+			graphics.drawImage(image, 0, 0, (int) (cell * snapshot.width), (int) (cell * snapshot.height), null);
+			double size = Math.max(4, cell * 0.85);
+			for(int i=0; i<snapshot.uavs; i++){
+				int px = (int) ((snapshot.uavX[i] + 0.5) * cell - size / 2);
+				int py = (int) ((snapshot.uavY[i] + 0.5) * cell - size / 2);
+				graphics.setColor(Color.white);
+				graphics.fillOval(px, py, (int) size, (int) size);
+				graphics.setColor(Color.red);
+				graphics.drawOval(px, py, (int) size, (int) size);
+			}
+		} finally {
+			source.release(snapshot);
+		}
+		graphics.setColor(Color.black);
+		graphics.drawString(status, 5, getHeight() - 5);
+	}
+
+	/**
+	 * @return a frame holding this display, as Display2D.createFrame
+	 */
+	public JFrame createFrame(){
+		JFrame frame = new JFrame();
+		frame.getContentPane().add(this);
+		frame.pack();
+		return frame;
+	}
+}
@@ -0,0 +1,99 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * Publish a snapshot of the world every given number of steps or milliseconds, whichever comes first,
+ * so that a display can draw it on its own cadence (see SnapshotDisplay) instead of the model waiting for it.
+ * Schedule it after the cells, e.g. with GUIState.scheduleRepeatingImmediatelyAfter.
+ *
+ * The types of the cells are kept up to date from the dirty cells of the simulation (see DirtyCells),
+ * publishing only copies them into the free snapshot of buffers.
+ */
+public class SnapshotPublisher implements Steppable{
+	private static final long serialVersionUID = 1L;
+
+	public final int everySteps;
+	public final long everyMillis;
+
+	private final int width;
+	private final int height;
+	private final DirtyCells dirty;
+	//types of the cells at the last publish
+	private final byte[] types;
+
+	//read by the display
+	public final SnapshotBuffers buffers;
+	private long publishedStep = -1;
+	private long publishedAt = 0;
+
+	/**
+	 * @param int everySteps, publish at least every this many steps (0 to only use everyMillis)
+	 * @param long everyMillis, publish at least every this many milliseconds (0 to only use everySteps)
+	 */
+	public SnapshotPublisher(Ignite ignite, int everySteps, long everyMillis){
+		this.everySteps = everySteps;
+		this.everyMillis = everyMillis;
+		this.width = ignite.width;
+		this.height = ignite.height;
+		this.types = new byte[width * height];
+		this.buffers = new SnapshotBuffers(width, height);
+		this.dirty = new DirtyCells(width, height);
+		ignite.dirtyCells.add(dirty);
+		publish(ignite);
+	}
+
+	@Override
+	public void step(SimState state){
+		Ignite ignite = (Ignite) state;
+		long step = ignite.currentStep();
+		if((everySteps > 0 && step - publishedStep >= everySteps)
+				|| (everyMillis > 0 && System.currentTimeMillis() - publishedAt >= everyMillis)){
+			publish(ignite);
+		}
+	}
+
+	private void publish(Ignite ignite){
+		int count = dirty.drain();
+		if(count == -1){
+			for(int x=0; x<width; x++){
+				for(int y=0; y<height; y++){
+					types[x * height + y] = (byte) ignite.typeAt(x, y).ordinal();
+				}
+			}
+		} else {
+			int[] cells = dirty.drained();
+			for(int i=0; i<count; i++){
+				types[cells[i]] = (byte) ignite.typeAt(cells[i] / height, cells[i] % height).ordinal();
+			}
+		}
+
+		WorldSnapshot snapshot = buffers.free();
+		System.arraycopy(types, 0, snapshot.types, 0, types.length);
+		snapshot.step = ignite.currentStep();
+		snapshot.cellsOnFire = ignite.cellsOnFire;
+		snapshot.cellsBurned = ignite.cellsBurned;
+		int uavs = ignite.UAVs.size();
+		if(snapshot.uavIds.length < uavs){
+			snapshot.uavIds = Arrays.copyOf(snapshot.uavIds, uavs);
+			snapshot.uavX = Arrays.copyOf(snapshot.uavX, uavs);
+			snapshot.uavY = Arrays.copyOf(snapshot.uavY, uavs);
+		}
+		int i = 0;
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			snapshot.uavIds[i] = uav.id;
+			snapshot.uavX[i] = uav.getX();
+			snapshot.uavY[i] = uav.getY();
+			i++;
+		}
+		snapshot.uavs = uavs;
+
+		buffers.publish(snapshot);
+		publishedStep = snapshot.step;
+		publishedAt = System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,315 @@
+package sim.app.firecontrol;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.swing.JFrame;
+
+/**
+ * Replay of a stream written by StateStreamWriter, one frame (step) at a time or seeking any step:
+ * the player goes back to the last keyframe before it and applies the deltas from there.
+ * The state after the last frame read is in types and in the UAVs, and can be copied into a WorldSnapshot.
+ *
+ * Usage, to watch a stream at the given number of steps per second:
+ *   java sim.app.firecontrol.StateStreamPlayer run.stream -speed 200 -from 1000
+ */
+public class StateStreamPlayer {
+	public final int width;
+	public final int height;
+	public final int keyframePeriod;
+	private final boolean compressed;
+	private final RandomAccessFile file;
+
+	//offset, step and kind of each frame, found when the stream is opened
+	private long[] offsets = new long[1024];
+	private long[] steps = new long[1024];
+	private byte[] kinds = new byte[1024];
+	private int frames = 0;
+
+	/* state after the last frame read */
+	//ordinal of the CellType of each cell, indexed as x*height+y
+	public final byte[] types;
+	//position and action of the UAVs, by id (see StateStreamWriter)
+	private final LinkedHashMap<Integer, long[]> uavs = new LinkedHashMap<>();
+	private final int[] counts = new int[CellType.values().length];
+	//index of the next frame to read
+	private int next = 0;
+
+	private byte[] data = new byte[1 << 12];
+	private byte[] inflated = new byte[1 << 12];
+	private final Inflater inflater = new Inflater();
+
+	public StateStreamPlayer(File stream) throws IOException {
+		file = new RandomAccessFile(stream, "r");
+		if(file.readInt() != StateStreamWriter.MAGIC || file.readInt() != StateStreamWriter.VERSION){
+			file.close();
+			throw new IOException(stream + " is not a state stream");
+		}
+		width = file.readInt();
+		height = file.readInt();
+		compressed = (file.readInt() & StateStreamWriter.COMPRESSED) != 0;
+		keyframePeriod = file.readInt();
+		types = new byte[width * height];
+
+		//index the frames, a frame cut by the end of the file (e.g. the run is still going) is ignored
+		long offset = file.getFilePointer();
+		long length = file.length();
+		while(offset + 13 <= length){
+			file.seek(offset);
+			byte kind = file.readByte();
+			long step = file.readLong();
+			int size = file.readInt();
+			if(offset + 13 + size > length){
+				break;
+			}
+			if(frames == offsets.length){
+				offsets = Arrays.copyOf(offsets, 2 * frames);
+				steps = Arrays.copyOf(steps, 2 * frames);
+				kinds = Arrays.copyOf(kinds, 2 * frames);
+			}
+			offsets[frames] = offset;
+			steps[frames] = step;
+			kinds[frames] = kind;
+			frames++;
+			offset += 13 + size;
+		}
+		if(frames == 0 || kinds[0] != StateStreamWriter.KEYFRAME){
+			file.close();
+			throw new IOException(stream + " does not start with a keyframe");
+		}
+	}
+
+	public int frames(){
+		return frames;
+	}
+
+	public long firstStep(){
+		return steps[0];
+	}
+
+	public long lastStep(){
+		return steps[frames - 1];
+	}
+
+	/**
+	 * @return the step of the last frame read, -1 if none
+	 */
+	public long step(){
+		return next == 0 ? -1 : steps[next - 1];
+	}
+
+	/**
+	 * @return the number of cells of the given type after the last frame read
+	 */
+	public int count(CellType type){
+		return counts[type.ordinal()];
+	}
+
+	public int uavs(){
+		return uavs.size();
+	}
+
+	/**
+	 * Read the next frame.
+	 * @return false if there are no frames left
+	 */
+	public boolean next() throws IOException {
+		if(next == frames){
+			return false;
+		}
+		read(next++);
+		return true;
+	}
+
+	/**
+	 * Move to the last frame whose step is not after the given one, reading as few frames as possible.
+	 */
+	public void seek(long step) throws IOException {
+		int target = Arrays.binarySearch(steps, 0, frames, step);
+		if(target < 0){
+			target = Math.max(0, -target - 2);
+		}
+		int keyframe = target;
+		while(kinds[keyframe] != StateStreamWriter.KEYFRAME){
+			keyframe--;
+		}
+		//go on from where we are if it is between the keyframe and the target
+		int from = next - 1 >= keyframe && next - 1 <= target ? next : keyframe;
+		for(int i=from; i<=target; i++){
+			read(i);
+		}
+		next = target + 1;
+	}
+
+	/**
+	 * Copy the state after the last frame read into the snapshot, of the same size of the stream.
+	 */
+	public void snapshot(WorldSnapshot snapshot){
+		System.arraycopy(types, 0, snapshot.types, 0, types.length);
+		snapshot.step = step();
+		snapshot.cellsOnFire = count(CellType.FIRE);
+		snapshot.cellsBurned = count(CellType.BURNED);
+		if(snapshot.uavIds.length < uavs.size()){
+			snapshot.uavIds = Arrays.copyOf(snapshot.uavIds, uavs.size());
+			snapshot.uavX = Arrays.copyOf(snapshot.uavX, uavs.size());
+			snapshot.uavY = Arrays.copyOf(snapshot.uavY, uavs.size());
+		}
+		int i = 0;
+		for(Map.Entry<Integer, long[]> uav : uavs.entrySet()){
+			snapshot.uavIds[i] = uav.getKey();
+			snapshot.uavX[i] = uav.getValue()[0] / StateStreamWriter.POSITION_SCALE;
+			snapshot.uavY[i] = uav.getValue()[1] / StateStreamWriter.POSITION_SCALE;
+			i++;
+		}
+		snapshot.uavs = uavs.size();
+	}
+
+	public void close() throws IOException {
+		file.close();
+		inflater.end();
+	}
+
+	private void read(int frame) throws IOException {
+		file.seek(offsets[frame] + 9);
+		int size = file.readInt();
+		if(data.length < size){
+			data = new byte[size];
+		}
+		file.readFully(data, 0, size);
+		ByteArrayInputStream in;
+		if(compressed){
+			inflater.reset();
+			inflater.setInput(data, 0, size);
+			int length = 0;
+			try {
+				while(!inflater.finished()){
+					if(length == inflated.length){
+						inflated = Arrays.copyOf(inflated, 2 * length);
+					}
+					int n = inflater.inflate(inflated, length, inflated.length - length);
+					if(n == 0 && inflater.needsInput()){
+						throw new IOException("Truncated frame at step " + steps[frame]);
+					}
+					length += n;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupted frame at step " + steps[frame], e);
+			}
+			in = new ByteArrayInputStream(inflated, 0, length);
+		} else {
+			in = new ByteArrayInputStream(data, 0, size);
+		}
+
+		if(kinds[frame] == StateStreamWriter.KEYFRAME){
+			Arrays.fill(counts, 0);
+			int index = 0;
+			while(index < types.length){
+				byte type = (byte) StateStreamWriter.readVarint(in);
+				int run = (int) StateStreamWriter.readVarint(in);
+				Arrays.fill(types, index, index + run, type);
+				counts[type] += run;
+				index += run;
+			}
+			uavs.clear();
+			int count = (int) StateStreamWriter.readVarint(in);
+			for(int i=0; i<count; i++){
+				int id = (int) StateStreamWriter.readVarint(in);
+				uavs.put(id, new long[]{StateStreamWriter.readSigned(in), StateStreamWriter.readSigned(in),
+						StateStreamWriter.readSigned(in), StateStreamWriter.readVarint(in)});
+			}
+		} else {
+			int count = (int) StateStreamWriter.readVarint(in);
+			int index = -1;
+			for(int i=0; i<count; i++){
+				index += (int) StateStreamWriter.readVarint(in);
+				byte type = (byte) StateStreamWriter.readVarint(in);
+				counts[types[index]]--;
+				counts[type]++;
+				types[index] = type;
+			}
+			count = (int) StateStreamWriter.readVarint(in);
+			for(int i=0; i<count; i++){
+				int id = (int) StateStreamWriter.readVarint(in);
+				int flags = (int) StateStreamWriter.readVarint(in);
+				if((flags & StateStreamWriter.REMOVED) != 0){
+					uavs.remove(id);
+					continue;
+				}
+				long[] uav = uavs.get(id);
+				if(uav == null){
+					uav = new long[4];
+					uavs.put(id, uav);
+				}
+				if((flags & StateStreamWriter.MOVED) != 0){
+					uav[0] += StateStreamWriter.readSigned(in);
+					uav[1] += StateStreamWriter.readSigned(in);
+					uav[2] += StateStreamWriter.readSigned(in);
+				}
+				if((flags & StateStreamWriter.ACTED) != 0){
+					uav[3] = StateStreamWriter.readVarint(in);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Play the stream on a SnapshotDisplay at the given number of steps per second.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 1){
+			System.err.println("Usage: StateStreamPlayer <stream> [-speed steps per second] [-from step]");
+			System.exit(-1);
+		}
+		double speed = 100;
+		long from = 0;
+		for(int i=1; i+1<args.length; i+=2){
+			String value = args[i+1];
+			switch(args[i]){
+				case "-speed": speed = Double.parseDouble(value); break;
+				case "-from": from = Long.parseLong(value); break;
+				default:
+					System.err.println("Unknown option " + args[i]);
+					System.exit(-1);
+			}
+		}
+
+		StateStreamPlayer player = new StateStreamPlayer(new File(args[0]));
+		SnapshotBuffers buffers = new SnapshotBuffers(player.width, player.height);
+		SnapshotDisplay display = new SnapshotDisplay(25);
+		display.setSource(buffers);
+		JFrame frame = display.createFrame();
+		frame.setTitle(args[0]);
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setVisible(true);
+
+		player.seek(from);
+		long started = System.nanoTime();
+		long startStep = player.step();
+		//the snapshot is published at most once every 20ms, frames in between are only applied
+		long publishedAt = 0;
+		do{
+			long now = System.nanoTime();
+			if(now - publishedAt > 20000000L){
+				WorldSnapshot snapshot = buffers.free();
+				player.snapshot(snapshot);
+				buffers.publish(snapshot);
+				publishedAt = now;
+			}
+			long due = started + (long) ((player.step() - startStep) * 1e9 / speed);
+			if(due > now){
+				Thread.sleep((due - now) / 1000000L, (int) ((due - now) % 1000000L));
+			}
+		} while(player.next());
+		WorldSnapshot snapshot = buffers.free();
+		player.snapshot(snapshot);
+		buffers.publish(snapshot);
+		player.close();
+	}
+}
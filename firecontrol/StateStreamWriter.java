@@ -0,0 +1,357 @@
+package sim.app.firecontrol;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.zip.Deflater;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * Stream of the state of a run, to watch it later or from another machine (see StateStreamPlayer).
+ * Written at each step when Ignite.streamTo is set, after everything else of the step; the FireController
+ * writes the step that ends the run before killing it, as the run stops before the writer is stepped.
+ *
+ * Format: a header (magic FCST, version, width, height, flags, keyframe period) followed by one frame per step,
+ * each one is its kind, its step (the steps done, 0 for the world at the start) and the length of its payload
+ * followed by the payload,
+ * deflated on its own if the COMPRESSED flag is set (so that any keyframe can be decoded without the frames before it).
+ * Payloads are made of varints (signed values zigzag encoded):
+ * - KEYFRAME, the whole world: the type of the cells as runs of (type, length) in the order x*height+y,
+ *   then the UAVs as count and, for each of them, id, x, y, z, action
+ * - DELTA, the changes since the previous frame: the cells as count and, for each of them,
+ *   distance from the previous changed cell and new type; then the UAVs as count and, for each of them,
+ *   id, flags (MOVED, ACTED, REMOVED), dx, dy, dz if MOVED and action if ACTED
+ * Positions are in thousandths of a cell, actions are AgentAction ordinals + 1 (0 for none).
+ * A keyframe is written every keyframe period steps, to seek the stream.
+ */
+public class StateStreamWriter implements Steppable{
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAGIC = 0x46435354; //FCST
+	public static final int VERSION = 1;
+	public static final int COMPRESSED = 1;
+	public static final int KEYFRAME = 1;
+	public static final int DELTA = 2;
+	public static final int MOVED = 1;
+	public static final int ACTED = 2;
+	public static final int REMOVED = 4;
+	public static final double POSITION_SCALE = 1000;
+
+	public final int keyframePeriod;
+	private final int width;
+	private final int height;
+	private final boolean compress;
+	private final DataOutputStream out;
+	private final DirtyCells dirty;
+	//types of the cells in the last frame
+	private final byte[] types;
+	//position and action of the UAVs in the last frame, by id
+	private final HashMap<Integer, long[]> uavs = new HashMap<>();
+
+	private final Payload payload = new Payload();
+	private final Payload uavPayload = new Payload();
+	private final Payload deflated = new Payload();
+	private final HashSet<Integer> present = new HashSet<>();
+	private final Deflater deflater;
+	private int[] changed = new int[1024];
+	private boolean closed = false;
+	//step of the last frame written
+	private long written;
+
+	/**
+	 * Open the stream and write the first keyframe, with the world as it is now.
+	 */
+	public StateStreamWriter(Ignite ignite, File file, int keyframePeriod, boolean compress) throws IOException {
+		this.keyframePeriod = keyframePeriod;
+		this.width = ignite.width;
+		this.height = ignite.height;
+		this.compress = compress;
+		this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+		this.types = new byte[width * height];
+		this.dirty = new DirtyCells(width, height);
+		//the first drain is the whole world, read below
+		dirty.drain();
+		ignite.dirtyCells.add(dirty);
+		for(int x=0; x<width; x++){
+			for(int y=0; y<height; y++){
+				types[x * height + y] = (byte) ignite.typeAt(x, y).ordinal();
+			}
+		}
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(compress ? COMPRESSED : 0);
+		out.writeInt(keyframePeriod);
+		keyframe(ignite, ignite.currentStep());
+	}
+
+	@Override
+	public void step(SimState state){
+		if(closed){
+			return;
+		}
+		Ignite ignite = (Ignite) state;
+		try {
+			//the step is not over yet
+			write(ignite, ignite.currentStep() + 1);
+		} catch (IOException e) {
+			System.err.println("Exception in StateStreamWriter.step() " + e.toString());
+			close(null);
+		}
+	}
+
+	private void write(Ignite ignite, long step) throws IOException {
+		int count = changedCells(ignite);
+		if(keyframePeriod > 0 && step % keyframePeriod == 0){
+			keyframe(ignite, step);
+		} else {
+			delta(ignite, step, count);
+		}
+	}
+
+	/**
+	 * Write the last step, if the run has been stopped before this was stepped, and close the stream.
+	 * Called by Ignite.finish.
+	 */
+	public void close(Ignite ignite){
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(ignite != null && ignite.currentStep() > written){
+			try {
+				write(ignite, ignite.currentStep());
+			} catch (IOException e) {
+				System.err.println("Exception in StateStreamWriter.close() " + e.toString());
+			}
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			System.err.println("Exception in StateStreamWriter.close() " + e.toString());
+		}
+		if(deflater != null){
+			deflater.end();
+		}
+	}
+
+	private void keyframe(Ignite ignite, long step) throws IOException {
+		payload.reset();
+		int run = 0;
+		for(int i=0; i<types.length; i++){
+			if(i > 0 && types[i] != types[i-1]){
+				payload.writeVarint(types[i-1]);
+				payload.writeVarint(run);
+				run = 0;
+			}
+			run++;
+		}
+		if(run > 0){
+			payload.writeVarint(types[types.length-1]);
+			payload.writeVarint(run);
+		}
+
+		uavs.clear();
+		payload.writeVarint(ignite.UAVs.size());
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			long[] last = state(uav);
+			uavs.put(uav.id, last);
+			payload.writeVarint(uav.id);
+			payload.writeSigned(last[0]);
+			payload.writeSigned(last[1]);
+			payload.writeSigned(last[2]);
+			payload.writeVarint(last[3]);
+		}
+		frame(KEYFRAME, step);
+	}
+
+	/*
+	 * Bring types up to date with the world.
+	 * @return the number of cells changed since the last frame, at the beginning of changed
+	 */
+	private int changedCells(Ignite ignite){
+		int count = dirty.drain();
+		if(count == -1){
+			//too many changes to list them, compare the whole world
+			count = 0;
+			for(int x=0; x<width; x++){
+				for(int y=0; y<height; y++){
+					int index = x * height + y;
+					if(types[index] != ignite.typeAt(x, y).ordinal()){
+						changed = grow(changed, count);
+						changed[count++] = index;
+					}
+				}
+			}
+		} else {
+			changed = grow(changed, count - 1);
+			System.arraycopy(dirty.drained(), 0, changed, 0, count);
+			Arrays.sort(changed, 0, count);
+		}
+		//cells changed and changed back (e.g. extinguished and burning again) are not kept
+		int kept = 0;
+		for(int i=0; i<count; i++){
+			int index = changed[i];
+			if(i > 0 && changed[i-1] == index){
+				continue;
+			}
+			byte type = (byte) ignite.typeAt(index / height, index % height).ordinal();
+			if(type != types[index]){
+				types[index] = type;
+				changed[kept++] = index;
+			}
+		}
+		return kept;
+	}
+
+	private void delta(Ignite ignite, long step, int kept) throws IOException {
+		payload.reset();
+		payload.writeVarint(kept);
+		int previous = -1;
+		for(int i=0; i<kept; i++){
+			payload.writeVarint(changed[i] - previous);
+			payload.writeVarint(types[changed[i]]);
+			previous = changed[i];
+		}
+
+		//UAVs, only the ones that moved or changed action
+		int uavCount = 0;
+		uavPayload.reset();
+		present.clear();
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			present.add(uav.id);
+			long[] now = state(uav);
+			long[] last = uavs.get(uav.id);
+			if(last == null){
+				//new UAV (e.g. arrived from another domain), from the origin
+				last = new long[4];
+				uavs.put(uav.id, last);
+			}
+			boolean moved = now[0] != last[0] || now[1] != last[1] || now[2] != last[2];
+			boolean acted = now[3] != last[3];
+			if(!moved && !acted){
+				continue;
+			}
+			uavCount++;
+			uavPayload.writeVarint(uav.id);
+			uavPayload.writeVarint((moved ? MOVED : 0) | (acted ? ACTED : 0));
+			if(moved){
+				uavPayload.writeSigned(now[0] - last[0]);
+				uavPayload.writeSigned(now[1] - last[1]);
+				uavPayload.writeSigned(now[2] - last[2]);
+			}
+			if(acted){
+				uavPayload.writeVarint(now[3]);
+			}
+			System.arraycopy(now, 0, last, 0, 4);
+		}
+		if(present.size() != uavs.size()){
+			for(Integer id : uavs.keySet().toArray(new Integer[0])){
+				if(!present.contains(id)){
+					uavCount++;
+					uavPayload.writeVarint(id);
+					uavPayload.writeVarint(REMOVED);
+					uavs.remove(id);
+				}
+			}
+		}
+		payload.writeVarint(uavCount);
+		payload.write(uavPayload.buffer(), 0, uavPayload.size());
+		frame(DELTA, step);
+	}
+
+	private void frame(int kind, long step) throws IOException {
+		Payload data = payload;
+		if(compress){
+			deflater.reset();
+			deflater.setInput(payload.buffer(), 0, payload.size());
+			deflater.finish();
+			deflated.reset();
+			byte[] chunk = new byte[8192];
+			while(!deflater.finished()){
+				int n = deflater.deflate(chunk);
+				deflated.write(chunk, 0, n);
+			}
+			data = deflated;
+		}
+		written = step;
+		out.writeByte(kind);
+		out.writeLong(step);
+		out.writeInt(data.size());
+		out.write(data.buffer(), 0, data.size());
+	}
+
+	/*
+	 * Quantized position and action of the UAV.
+	 */
+	private static long[] state(UAV uav){
+		return new long[]{
+				Math.round(uav.getX() * POSITION_SCALE),
+				Math.round(uav.getY() * POSITION_SCALE),
+				Math.round(uav.getZ() * POSITION_SCALE),
+				uav.action == null ? 0 : uav.action.ordinal() + 1};
+	}
+
+	private static int[] grow(int[] array, int index){
+		return index < array.length ? array : Arrays.copyOf(array, Math.max(2 * array.length, index + 1));
+	}
+
+	/*
+	 * Growable buffer of varints, its array is exposed to avoid copies.
+	 */
+	static class Payload extends ByteArrayOutputStream{
+		Payload(){
+			super(1 << 12);
+		}
+
+		byte[] buffer(){
+			return buf;
+		}
+
+		void writeVarint(long value){
+			while((value & ~0x7FL) != 0){
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		void writeSigned(long value){
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+	}
+
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for(int shift=0; shift<64; shift+=7){
+			int b = in.read();
+			if(b == -1){
+				throw new IOException("Truncated varint");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static long readSigned(InputStream in) throws IOException {
+		long value = readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,82 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Cells a forest store steps in one step, in a random order (see ChunkedForest, OffHeapForest, MortonForest).
+ *
+ * The schedule steps the cells of a dense forest in a new random order at each step, and the order
+ * matters: a normal cell clears its enhanced flag and takes fire when it is stepped, so cells stepped
+ * in a fixed scan order let the fire run along the direction of the scan.
+ * A store steps only the cells whose step can do something: cells on fire, their neighbors (whose
+ * status they lower), enhanced cells and normal cells about to take fire. Their order in a random
+ * order of all the cells is a random order as well, so the fire spreads as in a dense forest.
+ * Cells are indexed as x*height+y.
+ */
+class SteppedCells {
+	private final int width;
+	private final int height;
+	private long[] cells = new long[1024];
+	private int size = 0;
+
+	SteppedCells(int width, int height){
+		this.width = width;
+		this.height = height;
+	}
+
+	void clear(){
+		size = 0;
+	}
+
+	void add(int x, int y){
+		if(size == cells.length){
+			cells = Arrays.copyOf(cells, 2 * size);
+		}
+		cells[size++] = (long) x * height + y;
+	}
+
+	/**
+	 * A cell on fire, with the neighbors it may reach.
+	 */
+	void addFire(int x, int y){
+		for(int i=-1; i<=1; i++){
+			for(int j=-1; j<=1; j++){
+				if(x+i >= 0 && y+j >= 0 && x+i < width && y+j < height){
+					add(x+i, y+j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the cells added more than once and shuffle the others.
+	 * @return the number of cells to step
+	 */
+	int shuffle(MersenneTwisterFast random){
+		Arrays.sort(cells, 0, size);
+		int kept = 0;
+		for(int i=0; i<size; i++){
+			if(i == 0 || cells[i] != cells[i-1]){
+				cells[kept++] = cells[i];
+			}
+		}
+		size = kept;
+		for(int i=size-1; i>0; i--){
+			int j = random.nextInt(i + 1);
+			long swap = cells[i];
+			cells[i] = cells[j];
+			cells[j] = swap;
+		}
+		return size;
+	}
+
+	int x(int i){
+		return (int) (cells[i] / height);
+	}
+
+	int y(int i){
+		return (int) (cells[i] % height);
+	}
+}
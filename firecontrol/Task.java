@@ -28,6 +28,7 @@ public class Task{
 
 	public void addCell(WorldCell cell){
 		this.cells.add(cell);
+		cell.setTask(this);
 	}
 
 	/*
@@ -41,6 +42,7 @@ public class Task{
 		for(WorldCell wc : this.cells){
 			if(cell.isNeighborOf(wc)){
 				this.cells.add(cell);
+				cell.setTask(this);
 				//now update the radius
 				Int2D cellPos = new Int2D(cell.x, cell.y);
 				this.radius = Math.max(cellPos.distance(this.centroid), this.radius);
@@ -52,6 +54,7 @@ public class Task{
         
         public void addNewFire(WorldCell cell) {
                 this.cells.add(cell);
+                cell.setTask(this);
                 //now update the radius
                 Int2D cellPos = new Int2D(cell.x, cell.y);
                 this.radius = Math.max(cellPos.distance(this.centroid), this.radius);
@@ -66,6 +69,7 @@ public class Task{
 	 */
 	public boolean notifyExtinguishedFire(WorldCell cell) {
 		if(this.cells.remove(cell)){
+			cell.setTask(null);
 			Int2D pos = new Int2D(cell.x, cell.y);
 			//if it was a border cell
 			if(radius == pos.distance(centroid)){
@@ -84,7 +88,7 @@ public class Task{
         public Set<WorldCell> getCellsOnFire() {
             Set<WorldCell> ret = new LinkedHashSet<>();
             for(WorldCell cell: this.cells) {
-                if(cell.type.equals(CellType.FIRE))
+                if(cell.getType().equals(CellType.FIRE))
                     ret.add(cell);
             }
             return ret;
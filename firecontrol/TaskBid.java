@@ -19,7 +19,7 @@ public class TaskBid {
         Double2D bidderPos = new Double2D(bidder.x, bidder.y);
         for(Task task: tasks) {
             double bid = 1 - (bidderPos.distance(task.centroid) /           // the bid depends only by the distance wrt task
-                             (Math.sqrt(Math.pow(Ignite.height, 2) + Math.pow(Ignite.width, 2))));
+                             (Math.sqrt(Math.pow(bidder.ignite.height, 2) + Math.pow(bidder.ignite.width, 2))));
             bids.add(bid);
         }
     }
@@ -68,6 +68,11 @@ public class TaskDataPacket {
             else
                 this.tasks = new LinkedList<>(payload.tasks);
         }
+        
+        // number of entries carried by the payload
+        public int size() {
+            return UAVs.size() + bids.size() + awards.size() + (tasks == null ? 0 : tasks.size());
+        }
     };
 
     public Header header;
@@ -84,7 +89,7 @@ public class TaskDataPacket {
     }
     
     public void addBid() {
-        this.payload.bids.add(new TaskBid(this.header.sender, this.payload.tasks));
+        this.payload.bids.add(this.header.sender.taskBid(this.payload.tasks));
     }
     
     public void addAllBids(Set<TaskBid> bids) {
@@ -0,0 +1,254 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.stream.IntStream;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.util.Int2D;
+
+/**
+ * Rebuild the tasks from scratch, one for each group of 8-connected cells on fire, with a parallel
+ * connected-component labelling of the cells on fire.
+ *
+ * The world is split in stripes of columns (the rows of ObjectGrid2D.field) labelled in parallel:
+ * the cells on fire of each column are taken as runs, runs touching runs of the previous column are
+ * merged with a union-find, then the stripes are merged along their borders. Memory and the cost of
+ * the merges depend on the number of runs, not on the number of cells.
+ * The task of a group is centered in the cell closest to the mean position of the group, its radius
+ * is the distance of the farthest cell, its cells are listed column by column.
+ *
+ * Tasks drift as fires spread and merge (new fires join the closest task, see WorldCell.step):
+ * with Ignite.relabelTasksPeriod > 0 the tasks are rebuilt every that many steps, after the cells.
+ */
+public class TaskLabeller implements Steppable{
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void step(SimState state){
+		rebuild((Ignite) state);
+	}
+
+	/**
+	 * Replace the tasks of the simulation with the ones of the cells on fire now.
+	 * UAVs move to the new task of their old one (the one holding its cells on fire) and forget
+	 * the awards of the auctions run on the old tasks.
+	 */
+	public static void rebuild(Ignite ignite){
+		//a cell on fire of each old task, to find its new task
+		HashMap<Task, WorldCell> anchors = new HashMap<>();
+		for(Task t : ignite.tasks){
+			for(WorldCell cell : t.cells){
+				if(anchors.get(t) == null && cell.getType().equals(CellType.FIRE)){
+					anchors.put(t, cell);
+				}
+				if(cell.getTask() == t){
+					cell.setTask(null);
+				}
+			}
+		}
+
+		ignite.tasks = label(ignite);
+
+		for(Object obj : ignite.UAVs){
+			UAV uav = (UAV) obj;
+			WorldCell anchor = uav.myTask == null ? null : anchors.get(uav.myTask);
+			uav.myTask = anchor == null ? null : anchor.getTask();
+			uav.taskPacket = null;
+		}
+	}
+
+	/**
+	 * @return a task for each group of 8-connected cells on fire, in the order of their first cell
+	 * (column by column), the cells get their task
+	 */
+	public static LinkedList<Task> label(Ignite ignite){
+		int width = ignite.width;
+		int height = ignite.height;
+		int count = Math.max(1, Math.min(width, 4 * Runtime.getRuntime().availableProcessors()));
+		Stripe[] stripes = new Stripe[count];
+		IntStream.range(0, count).parallel().forEach(s -> {
+			stripes[s] = new Stripe(ignite, (int) ((long) width * s / count), (int) ((long) width * (s + 1) / count));
+		});
+
+		//all the runs in a single union-find, in the order of the stripes
+		int runs = 0;
+		for(Stripe stripe : stripes){
+			stripe.offset = runs;
+			runs += stripe.runs;
+		}
+		int[] parent = new int[runs];
+		for(Stripe stripe : stripes){
+			for(int i=0; i<stripe.runs; i++){
+				parent[stripe.offset + i] = stripe.offset + stripe.parent[i];
+			}
+		}
+		for(int s=1; s<count; s++){
+			Stripe left = stripes[s-1];
+			Stripe right = stripes[s];
+			merge(parent, left, left.offset, left.columnStart[left.x1 - left.x0 - 1], left.columnStart[left.x1 - left.x0],
+					right, right.offset, right.columnStart[0], right.columnStart[1]);
+		}
+
+		//components in the order of their first run, the root is always the first run
+		int[] component = new int[runs];
+		int components = 0;
+		for(int i=0; i<runs; i++){
+			int root = find(parent, i);
+			component[i] = root == i ? components++ : component[root];
+		}
+		long[] cells = new long[components];
+		long[] sumX = new long[components];
+		long[] sumY = new long[components];
+		for(Stripe stripe : stripes){
+			for(int i=0; i<stripe.runs; i++){
+				int c = component[stripe.offset + i];
+				long y0 = stripe.y0[i];
+				long y1 = stripe.y1[i];
+				cells[c] += y1 - y0;
+				sumX[c] += (y1 - y0) * stripe.x[i];
+				sumY[c] += (y0 + y1 - 1) * (y1 - y0) / 2;
+			}
+		}
+
+		//the centroid has to be one of the cells of the group
+		int[] centroidX = new int[components];
+		int[] centroidY = new int[components];
+		double[] best = new double[components];
+		Arrays.fill(best, Double.MAX_VALUE);
+		for(Stripe stripe : stripes){
+			for(int i=0; i<stripe.runs; i++){
+				int c = component[stripe.offset + i];
+				double meanX = sumX[c] / (double) cells[c];
+				double meanY = sumY[c] / (double) cells[c];
+				int x = stripe.x[i];
+				int y = (int) Math.max(stripe.y0[i], Math.min(stripe.y1[i] - 1, Math.round(meanY)));
+				double d = (x - meanX) * (x - meanX) + (y - meanY) * (y - meanY);
+				if(d < best[c]){
+					best[c] = d;
+					centroidX[c] = x;
+					centroidY[c] = y;
+				}
+			}
+		}
+
+		Task[] tasks = new Task[components];
+		for(int c=0; c<components; c++){
+			tasks[c] = new Task(new Int2D(centroidX[c], centroidY[c]), 0);
+		}
+		for(Stripe stripe : stripes){
+			for(int i=0; i<stripe.runs; i++){
+				Task task = tasks[component[stripe.offset + i]];
+				int x = stripe.x[i];
+				//the farthest cell of a run is one of its ends
+				task.radius = Math.max(task.radius, Math.max(task.centroid.distance(new Int2D(x, stripe.y0[i])),
+						task.centroid.distance(new Int2D(x, stripe.y1[i] - 1))));
+				for(int y=stripe.y0[i]; y<stripe.y1[i]; y++){
+					task.addCell(ignite.cell(x, y));
+				}
+			}
+		}
+		return new LinkedList<>(Arrays.asList(tasks));
+	}
+
+	/*
+	 * Runs of cells on fire of the columns x0 <= x < x1, labelled on their own.
+	 */
+	private static class Stripe {
+		final int x0;
+		final int x1;
+		//first run of each column, columnStart[x-x0]
+		final int[] columnStart;
+		int runs = 0;
+		int[] x = new int[64];
+		int[] y0 = new int[64];
+		//exclusive
+		int[] y1 = new int[64];
+		int[] parent = new int[64];
+		//index of the first run in the whole world
+		int offset;
+
+		Stripe(Ignite ignite, int x0, int x1){
+			this.x0 = x0;
+			this.x1 = x1;
+			this.columnStart = new int[x1 - x0 + 1];
+			int height = ignite.height;
+			for(int cx=x0; cx<x1; cx++){
+				columnStart[cx - x0] = runs;
+				int y = 0;
+				while(y < height){
+					if(ignite.typeAt(cx, y) != CellType.FIRE){
+						y++;
+						continue;
+					}
+					int start = y;
+					while(y < height && ignite.typeAt(cx, y) == CellType.FIRE){
+						y++;
+					}
+					add(cx, start, y);
+				}
+				if(cx > x0){
+					merge(parent, this, 0, columnStart[cx - x0 - 1], columnStart[cx - x0], this, 0, columnStart[cx - x0], runs);
+				}
+			}
+			columnStart[x1 - x0] = runs;
+		}
+
+		private void add(int cx, int from, int to){
+			if(runs == x.length){
+				x = Arrays.copyOf(x, 2 * runs);
+				y0 = Arrays.copyOf(y0, 2 * runs);
+				y1 = Arrays.copyOf(y1, 2 * runs);
+				parent = Arrays.copyOf(parent, 2 * runs);
+			}
+			x[runs] = cx;
+			y0[runs] = from;
+			y1[runs] = to;
+			parent[runs] = runs;
+			runs++;
+		}
+	}
+
+	/*
+	 * Union the runs [a0, a1) of a column of a with the runs [b0, b1) of the next column of b that
+	 * touch them (8-connectivity), runs of a column are sorted by y. Indexes in parent are the ones
+	 * of the stripes shifted by shiftA and shiftB (0 while a stripe is labelled on its own).
+	 */
+	private static void merge(int[] parent, Stripe a, int shiftA, int a0, int a1, Stripe b, int shiftB, int b0, int b1){
+		int i = a0;
+		int j = b0;
+		while(i < a1 && j < b1){
+			if(a.y0[i] <= b.y1[j] && b.y0[j] <= a.y1[i]){
+				union(parent, i + shiftA, j + shiftB);
+			}
+			if(a.y1[i] < b.y1[j]){
+				i++;
+			} else {
+				j++;
+			}
+		}
+	}
+
+	private static int find(int[] parent, int i){
+		while(parent[i] != i){
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/*
+	 * The root is the smallest index, i.e. the first run of the component.
+	 */
+	private static void union(int[] parent, int i, int j){
+		int ri = find(parent, i);
+		int rj = find(parent, j);
+		if(ri < rj){
+			parent[rj] = ri;
+		} else if(rj < ri){
+			parent[ri] = rj;
+		}
+	}
+}
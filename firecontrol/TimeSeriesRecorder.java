@@ -0,0 +1,186 @@
+package sim.app.firecontrol;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records a fixed set of numeric series (one value per column per step) and
+ * writes them to a csv file without blocking the simulation.
+ *
+ * Rows are stored in chunks of primitive columns. When a chunk is full it is handed
+ * to a background writer thread and recording goes on in a free chunk: chunks
+ * already written are recycled, and if the writer is late a new chunk is allocated
+ * instead of waiting for it. If the writer is so late that 1024 chunks are waiting
+ * (e.g. a slow disk), the rows of the chunk are dropped and counted (see droppedRows)
+ * rather than stalling the simulation. Only close waits for the writer.
+ */
+public class TimeSeriesRecorder {
+	private static final int CHUNK_ROWS = 4096;
+
+	/* a block of rows, stored column by column */
+	private static class Chunk {
+		final long[][] columns;
+		int rows;
+
+		Chunk(int numColumns){
+			this.columns = new long[numColumns][CHUNK_ROWS];
+		}
+	}
+
+	//end of stream marker for the writer
+	private static final Chunk EOF = new Chunk(0);
+
+	private final String[] header;
+	private final BlockingQueue<Chunk> full;
+	private final ConcurrentLinkedQueue<Chunk> free;
+	private final Thread writer;
+	private volatile IOException error;
+	private Chunk current;
+	private int column;
+	private boolean closed;
+	private long droppedRows;
+
+	public TimeSeriesRecorder(File file, String... header) throws IOException {
+		this.header = header;
+		this.full = new ArrayBlockingQueue<>(1024);
+		this.free = new ConcurrentLinkedQueue<>();
+		this.current = new Chunk(header.length);
+
+		final BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		this.writer = new Thread(new Runnable(){
+			public void run(){
+				write(out);
+			}
+		}, "TimeSeriesRecorder-" + file.getName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Add the next value of the current row, values are expected in header order.
+	 */
+	public void add(long value){
+		current.columns[column++][current.rows] = value;
+	}
+
+	/**
+	 * Close the current row. A full chunk is passed to the writer.
+	 */
+	public void endRow(){
+		column = 0;
+		current.rows++;
+		if(current.rows == CHUNK_ROWS){
+			if(full.offer(current)){
+				current = free.poll();
+				if(current == null){
+					current = new Chunk(header.length);
+				}
+			} else {
+				//the writer is really behind, the rows are lost and the chunk is reused
+				droppedRows += current.rows;
+			}
+			current.rows = 0;
+		}
+	}
+
+	/**
+	 * @return the number of rows dropped because the writer was too late
+	 */
+	public long droppedRows(){
+		return droppedRows;
+	}
+
+	/**
+	 * Flush the remaining rows and wait for the writer to finish.
+	 * @throws IOException if the writer failed
+	 */
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(current.rows > 0){
+			put(current);
+		}
+		put(EOF);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(error != null){
+			throw error;
+		}
+	}
+
+	private void put(Chunk chunk){
+		try {
+			full.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Body of the writer thread. After an error chunks are still consumed (and dropped)
+	 * so that the simulation never blocks, the error is reported by close.
+	 */
+	private void write(BufferedWriter out){
+		try {
+			writeRow(out, header);
+		} catch (IOException e) {
+			error = e;
+		}
+		try {
+			Chunk chunk;
+			while((chunk = full.take()) != EOF){
+				if(error == null){
+					try {
+						writeChunk(out, chunk);
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				chunk.rows = 0;
+				free.offer(chunk);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				if(error == null){
+					error = e;
+				}
+			}
+		}
+	}
+
+	private void writeRow(BufferedWriter out, String[] values) throws IOException {
+		for(int c=0; c<values.length; c++){
+			if(c > 0){
+				out.write(',');
+			}
+			out.write(values[c]);
+		}
+		out.newLine();
+	}
+
+	private void writeChunk(BufferedWriter out, Chunk chunk) throws IOException {
+		for(int r=0; r<chunk.rows; r++){
+			for(int c=0; c<chunk.columns.length; c++){
+				if(c > 0){
+					out.write(',');
+				}
+				out.write(Long.toString(chunk.columns[c][r]));
+			}
+			out.newLine();
+		}
+	}
+}
@@ -12,16 +12,18 @@
 package sim.app.firecontrol;
 
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Set;
 import sim.util.Bag;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ec.util.MersenneTwisterFast;
 import sim.engine.SimState;
 import sim.engine.Steppable;
+import sim.engine.TentativeStep;
 import sim.util.Double2D;
 import sim.util.Double3D;
 import sim.util.Int3D;
@@ -36,7 +38,8 @@ public class UAV implements Steppable {
     public double z; //z position in the world
     public Double3D target; //UAV target
     public AgentAction action; //last action executed by the UAV: SELECT_TASK, SELECT_CELL, MOVE, EXTINGUISH
-    public static double communicationRange = 30; //communication range for the UAVs
+    public Ignite ignite; //the simulation the UAV belongs to
+    public MersenneTwisterFast random; //own stream, see RandomStreams
 
     // Agent's local knowledge 
     public Set<WorldCell> soldCells;
@@ -44,18 +47,31 @@ public class UAV implements Steppable {
     public TaskDataPacket taskPacket;
     public CellDataPacket cellPacket;
 
-    // Agent's settings - static because they have to be the same for all the 
-    // UAV in the simulation. If you change it once, you change it for all the UAV.
-    public static double linearvelocity = 0.02;
+    // Agent's settings (linearvelocity, communicationRange, stepToExtinguish, eventDrivenTravel)
+    // are held by Ignite because they have to be the same for all the UAV in the simulation.
 
-    //used to count the steps needed to extinguish a fire in a location
-    public static int stepToExtinguish = 10;
     //used to remember when first started to extinguish at current location
-    private int startedToExtinguishAt = -1;
-
-    public UAV(int id, Double3D myPosition) {
+    int startedToExtinguishAt = -1;
+
+    //event-driven travel toward the target, departedAt is -1 when not travelling
+    private long departedAt = -1;
+    private double departX;
+    private double departY;
+    private long arrivalAt;
+    private TentativeStep wakeUp;
+
+    //bids computed by the decide phase of UAVPhases from the state at the beginning of the step, null out of it
+    AgentAction plannedAction;
+    Task plannedCellTask;
+    CellBid plannedCellBid;
+    LinkedList<Task> plannedTasks;
+    TaskBid plannedTaskBid;
+
+    public UAV(int id, Double3D myPosition, Ignite ignite) {
         //set agent's id
         this.id = id;
+        this.ignite = ignite;
+        this.random = ignite.streams.uav(id);
         //set agent's position
         this.x = myPosition.x;
         this.y = myPosition.y;
@@ -77,6 +93,7 @@ public class UAV implements Steppable {
     }
 
     public double getX() {
+        syncTravel();
         return this.x;
     }
 
@@ -85,6 +102,7 @@ public class UAV implements Steppable {
     }
 
     public double getY() {
+        syncTravel();
         return this.y;
     }
 
@@ -107,23 +125,59 @@ public class UAV implements Steppable {
     public void step(SimState state) {
         Ignite ignite = (Ignite)state;
 
+        //woken up while travelling: either arrived or the target stopped burning
+        if(isTravelling()) {
+            boolean early = ignite.schedule.getSteps() < arrivalAt;
+            land(ignite);
+            if(early) {
+                //same as the last move followed by recomputeTarget
+                recomputeTarget(ignite);
+                if(this.target != null)
+                    travel(ignite, ignite.schedule.getSteps() + 1);
+                else
+                    ignite.schedule.scheduleOnce(this, 1);
+                return;
+            }
+        }
+
         //select the next action for the agent
         AgentAction a = nextAction(ignite);
+        long startedAt = System.nanoTime();
+        //UAVs stepped by UAVPhases move step by step
+        boolean eventDriven = ignite.eventDrivenTravel && !ignite.phasedUAVs;
         
         switch(a) {
         case SELECT_TASK:
             selectTask(ignite);
+            ignite.stats.record(PhaseStats.Phase.TASK_AUCTION, startedAt);
             
             this.action = a;
             break;
 
         case SELECT_CELL:
+            //over a target that is not on fire anymore
+            this.target = null;
             selectCell(ignite);
+            ignite.stats.record(PhaseStats.Phase.CELL_AUCTION, startedAt);
+            
+            this.action = a;
             break;
 
         case MOVE:
-            move(state);
-            recomputeTarget(ignite);
+            if(eventDriven) {
+                //the target may have stopped burning since it was awarded, before the agent was travelling:
+                //without it the agent takes a new cell in the next step
+                recomputeTarget(ignite);
+                if(this.target != null)
+                    travel(ignite, ignite.schedule.getSteps());
+            }
+            else {
+                move(state);
+                recomputeTarget(ignite);
+            }
+            ignite.stats.record(PhaseStats.Phase.MOVE, startedAt);
+            
+            this.action = a;
             break;
 
         case EXTINGUISH:
@@ -132,7 +186,7 @@ public class UAV implements Steppable {
                 //retrieve discrete location of this
                 Int3D dLoc = ignite.air.discretize(new Double3D(this.x, this.y, this.z));
                 //extinguish the fire
-                ((WorldCell)ignite.forest.field[dLoc.x][dLoc.y]).extinguish(ignite);
+                ignite.cell(dLoc.x, dLoc.y).extinguish(ignite);
                 this.target = null;
                 this.cellPacket = null;
             }
@@ -143,8 +197,16 @@ public class UAV implements Steppable {
         default:	
             System.exit(-1);
         }
+        ignite.latencies.record(this, a, System.nanoTime() - startedAt, ignite.currentStep());
+
+        //travelling agents already scheduled their wake up
+        if(eventDriven && !isTravelling())
+            ignite.schedule.scheduleOnce(this, 1);
     }
     
+    /*
+     * The next action given the state of the agent, it does not change anything.
+     */
     private AgentAction nextAction(Ignite ignite){
         //if I do not have a task I need to take one
         if(this.myTask == null) {
@@ -158,14 +220,11 @@ public class UAV implements Steppable {
         //check if I am over the target and in that case execute the right action;
         //if not, continue to move toward the target
         else if(this.target.equals(ignite.air.discretize(new Double3D(x, y, z)))) {
-            //if on fire then extinguish, otherwise move on
-            WorldCell cell = (WorldCell)ignite.forest.field[(int) x][(int) y];
-
-            if(cell.type.equals(CellType.FIRE)) {
+            //if on fire then extinguish, otherwise move on (the target is dropped by step)
+            if(ignite.typeAt((int) x, (int) y).equals(CellType.FIRE)) {
                 return AgentAction.EXTINGUISH;
             }
             else {
-                this.target = null;
                 return AgentAction.SELECT_CELL;
             }
 
@@ -175,6 +234,64 @@ public class UAV implements Steppable {
         }
     }
 
+    /**
+     * Decide phase of UAVPhases: take the next action, reading the state without changing
+     * anything shared, so that all the agents can decide in parallel.
+     */
+    void decide(Ignite ignite) {
+        this.plannedAction = nextAction(ignite);
+    }
+
+    /**
+     * Decide phase of UAVPhases: the bid on the cells of the task, only needed when some agent
+     * of the same task starts a cell auction. The agent bids when it has a task and no target,
+     * i.e. after this action.
+     */
+    void decideCellBid(Ignite ignite) {
+        if(this.myTask != null && (this.plannedAction == AgentAction.SELECT_CELL || this.plannedAction == AgentAction.EXTINGUISH)) {
+            this.plannedCellTask = this.myTask;
+            this.plannedCellBid = new CellBid(this, this.myTask);
+        }
+    }
+
+    /**
+     * Decide phase of UAVPhases: the bid on the tasks, only needed when some agent starts a task auction.
+     */
+    void decideTaskBid(Ignite ignite) {
+        this.plannedTasks = new LinkedList<>(ignite.tasks);
+        this.plannedTaskBid = new TaskBid(this, this.plannedTasks);
+    }
+
+    /**
+     * End of the step of UAVPhases, the planned bids are stale.
+     */
+    void forgetPlan() {
+        this.plannedAction = null;
+        this.plannedCellTask = null;
+        this.plannedCellBid = null;
+        this.plannedTasks = null;
+        this.plannedTaskBid = null;
+    }
+
+    /**
+     * The bid of this agent on the tasks, the planned one if it was made on the same tasks.
+     */
+    TaskBid taskBid(LinkedList<Task> tasks) {
+        if(this.plannedTaskBid != null && this.plannedTasks.equals(tasks))
+            return this.plannedTaskBid;
+        return new TaskBid(this, tasks);
+    }
+
+    /**
+     * The bid of this agent on the cells of the task, the planned one without the cells
+     * sold or extinguished since it was made.
+     */
+    CellBid cellBid(Task fire) {
+        if(this.plannedCellBid != null && this.plannedCellTask == fire)
+            return new CellBid(this.plannedCellBid);
+        return new CellBid(this, fire);
+    }
+
     /**
      * Take the centroid of the fire and its expected radius and extract the new
      * task for the agent.
@@ -182,9 +299,21 @@ public class UAV implements Steppable {
     private void selectTask(Ignite ignite) {
         Task newTask = null;
         
+        //a domain of a distributed run may have no task at all, see DomainWorker
+        if(ignite.tasks.isEmpty()) {
+            this.myTask = null;
+            return;
+        }
+        
         if(this.taskPacket == null) {
+            ignite.taskAuctions++;
+            AuctionEvent auction = new AuctionEvent();
+            auction.begin();
+            long messagesBefore = ignite.messagesSent;
             TaskDataPacket packet = new TaskDataPacket(this, PacketType.ANNOUNCEMENT, ignite.UAVs, ignite.tasks);
+            long startedAt = System.nanoTime();
             taskReceiveData(packet);
+            ignite.stats.record(PhaseStats.Phase.FLOODING, startedAt);
             
             packet = new TaskDataPacket(this, PacketType.AWARDING, ignite.UAVs, null);
             double netSize = this.taskPacket.payload.bids.size();
@@ -223,7 +352,10 @@ public class UAV implements Steppable {
                 packet.payload.awards.add(award);
             }
             
+            startedAt = System.nanoTime();
             taskReceiveData(packet);
+            ignite.stats.record(PhaseStats.Phase.FLOODING, startedAt);
+            auction.finish("TASK", this, this.taskPacket.header.visitedUAVs.size(), (int) netSize, messagesBefore);
         }
         
         for(TaskAward award: this.taskPacket.payload.awards)
@@ -231,24 +363,11 @@ public class UAV implements Steppable {
                 newTask = award.award;
             
         try {
-            Set<WorldCell> cellsOnFire = newTask.getCellsOnFire();
-            if(cellsOnFire.size() > 0) {
+            // the closest cell on fire of the task, looked up in the distance field
+            WorldCell bestCell = newTask == null ? null : ignite.fireField.nearestFire(ignite, newTask, (int) x, (int) y);
+            if(bestCell != null) {
                 this.myTask = newTask;
                 
-                Double2D myLoc = new Double2D(x, y);
-                double uMax = 0.0;
-                WorldCell bestCell = null;
-                
-                for(WorldCell iterCell: cellsOnFire) {
-                    double cellDistFromUav = myLoc.distance(new Double2D(iterCell.x, iterCell.y));
-                    double u = 1 - (cellDistFromUav / Math.sqrt(2.0 * Math.pow(ignite.height, 2.0))); ;
-                    
-                    if(u >= uMax) {
-                        uMax = u;
-                        bestCell = iterCell;
-                    }
-                }
-                
                 this.target = new Double3D(bestCell.x, bestCell.y, z);
                 this.soldCells.add(bestCell);
             }
@@ -265,8 +384,15 @@ public class UAV implements Steppable {
      * cell that requires closer inspection or/and foam. 
      */
     private void selectCell(Ignite ignite) {
+        ignite.cellAuctions++;
+        AuctionEvent auction = new AuctionEvent();
+        auction.begin();
+        long messagesBefore = ignite.messagesSent;
         CellDataPacket packet = new CellDataPacket(this, this.myTask, PacketType.ANNOUNCEMENT, ignite.UAVs);
+        long startedAt = System.nanoTime();
         cellReceiveData(packet);
+        ignite.stats.record(PhaseStats.Phase.FLOODING, startedAt);
+        int bidders = this.cellPacket.payload.bids.size();
 
         packet = new CellDataPacket(this, this.myTask, PacketType.AWARDING, ignite.UAVs);
         packet.addAllSoldCells(this.soldCells);
@@ -292,8 +418,7 @@ public class UAV implements Steppable {
             
             // utility-proportional random choice
             if(validCells.size() > 0) {
-                Random r = new Random();
-                double randomValue = totalUtility * r.nextDouble();
+                double randomValue = totalUtility * this.random.nextDouble();
                                 
                 double incr = 0;
                 WorldCell randomCell = null;
@@ -316,7 +441,10 @@ public class UAV implements Steppable {
             }
         }
         
+        startedAt = System.nanoTime();
         cellReceiveData(packet);
+        ignite.stats.record(PhaseStats.Phase.FLOODING, startedAt);
+        auction.finish("CELL", this, this.cellPacket.header.visitedUAVs.size(), bidders, messagesBefore);
         
         if(this.target == null) {
             this.myTask = null;
@@ -328,7 +456,7 @@ public class UAV implements Steppable {
     /**
      * Move the agent toward the target position
      * The agent moves at a fixed given velocity
-     * @see this.linearvelocity
+     * @see Ignite.linearvelocity
      */
     public void move(SimState state) {
         Ignite ignite = (Ignite) state;
@@ -345,15 +473,15 @@ public class UAV implements Steppable {
         double ydistance = this.target.y - myy;
 
         if(xdistance < 0)
-            myx -= Math.min(Math.abs(xdistance), linearvelocity);
+            myx -= Math.min(Math.abs(xdistance), ignite.linearvelocity);
         else
-            myx += Math.min(xdistance, linearvelocity);
+            myx += Math.min(xdistance, ignite.linearvelocity);
 
         if(ydistance < 0) { 
-            myy -= Math.min(Math.abs(ydistance), linearvelocity);
+            myy -= Math.min(Math.abs(ydistance), ignite.linearvelocity);
         }
         else {	
-            myy += Math.min(ydistance, linearvelocity);
+            myy += Math.min(ydistance, ignite.linearvelocity);
         }
 
         // update position in the simulation
@@ -367,24 +495,125 @@ public class UAV implements Steppable {
     /**
      * Start to extinguish the fire at current location.
      * @return true if enough time has passed and the fire is gone, false otherwise
-     * @see this.stepToExtinguish
+     * @see Ignite.stepToExtinguish
      * @see this.startedToExtinguishAt
      */
     private boolean extinguish(Ignite ignite) {
         if(startedToExtinguishAt==-1) {
-            this.startedToExtinguishAt = (int) ignite.schedule.getSteps();
+            this.startedToExtinguishAt = (int) ignite.currentStep();
         }
         //enough time has passed, the fire is gone
-        if(ignite.schedule.getSteps() - startedToExtinguishAt >= stepToExtinguish) {
+        if(ignite.currentStep() - startedToExtinguishAt >= ignite.stepToExtinguish) {
             startedToExtinguishAt = -1;
             return true;
         }		
         return false;
     }
     
+    /**
+     * Start to travel toward the target without moving step by step.
+     * Every step the agent moves by linearvelocity along each axis (as in move), so the
+     * position after k moves and the step at which the agent is over the target are
+     * known in advance: the agent schedules a single wake up at that step and its
+     * position is only interpolated when someone needs it.
+     * @param firstMove the step at which the agent makes its first move
+     * @see this.move
+     * @see this.targetStoppedBurning
+     */
+    private void travel(Ignite ignite, long firstMove) {
+        this.departX = this.x;
+        this.departY = this.y;
+        this.departedAt = firstMove;
+
+        //number of moves needed to be over the target cell
+        long moves = Math.max(movesToReach(this.x, this.target.x), movesToReach(this.y, this.target.y));
+        //protect against rounding, the interpolated position is what counts
+        while(!isOverTarget(moves))
+            moves++;
+        while(moves > 1 && isOverTarget(moves - 1))
+            moves--;
+        this.arrivalAt = firstMove + Math.max(moves, 1);
+
+        this.wakeUp = new TentativeStep(this);
+        ignite.schedule.scheduleOnce(this.arrivalAt, 1, this.wakeUp);
+    }
+
+    /*
+     * Moves along one axis before the discretized position is equal to the target.
+     * Coming from below the agent has to reach the target, coming from above it is
+     * enough to enter the target cell.
+     */
+    private long movesToReach(double from, double to) {
+        double distance = to - from;
+        if(distance >= 0)
+            return (long) Math.ceil(distance / ignite.linearvelocity);
+        if(-distance < 1)
+            return 0;
+        return (long) Math.floor((-distance - 1) / ignite.linearvelocity) + 1;
+    }
+
+    private boolean isOverTarget(long moves) {
+        return (int) Math.floor(interpolate(departX, target.x, moves)) == (int) target.x
+                && (int) Math.floor(interpolate(departY, target.y, moves)) == (int) target.y;
+    }
+
+    private double interpolate(double from, double to, long moves) {
+        double distance = to - from;
+        double travelled = moves * ignite.linearvelocity;
+        if(Math.abs(distance) <= travelled)
+            return to;
+        return distance < 0 ? from - travelled : from + travelled;
+    }
+
+    /**
+     * @return true if the agent is travelling toward its target and sleeping until arrival
+     */
+    public boolean isTravelling() {
+        return this.departedAt != -1;
+    }
+
+    /**
+     * Update x and y with the interpolated position of a travelling agent.
+     * The position is the one the agent would have after moving in the current step.
+     */
+    public void syncTravel() {
+        if(!isTravelling())
+            return;
+        long moves = Math.min(ignite.schedule.getSteps() - departedAt + 1, arrivalAt - departedAt);
+        if(moves < 0)
+            moves = 0;
+        this.x = interpolate(departX, target.x, moves);
+        this.y = interpolate(departY, target.y, moves);
+    }
+
+    /*
+     * Stop travelling and store the interpolated position in the air field.
+     */
+    private void land(Ignite ignite) {
+        syncTravel();
+        this.departedAt = -1;
+        this.wakeUp = null;
+        ignite.air.setObjectLocation(this, new Double3D(x, y, z));
+    }
+
+    /**
+     * Called when a cell stops burning. If the cell was the target of this travelling 
+     * agent it is woken up in the next step, exactly as recomputeTarget would do.
+     */
+    public void targetStoppedBurning(Ignite ignite, WorldCell cell) {
+        if(!isTravelling() || (int) target.x != cell.x || (int) target.y != cell.y)
+            return;
+        long next = ignite.schedule.getSteps() + 1;
+        if(next < arrivalAt) {
+            this.wakeUp.stop();
+            this.wakeUp = new TentativeStep(this);
+            ignite.schedule.scheduleOnce(next, 1, this.wakeUp);
+        }
+    }
+    
     private void recomputeTarget(Ignite ignite) {
-        WorldCell cell = (WorldCell)ignite.forest.field[(int) this.target.x][(int) this.target.y];
-        if(!cell.type.equals(CellType.FIRE))
+        WorldCell cell = ignite.cell((int) this.target.x, (int) this.target.y);
+        if(!cell.getType().equals(CellType.FIRE))
             this.target = null;
     }
 
@@ -394,7 +623,7 @@ public class UAV implements Steppable {
      */
     public boolean isInCommunicationRange(Double3D otherLoc) {
         Double3D myLoc = new Double3D(x, y, z);
-        return myLoc.distance(otherLoc) <= UAV.communicationRange;
+        return myLoc.distance(otherLoc) <= ignite.communicationRange;
     }
     
     /**
@@ -406,6 +635,7 @@ public class UAV implements Steppable {
         
         for(Object obj : UAVs) {
             UAV other = (UAV) obj;
+            other.syncTravel();
             if(isInCommunicationRange(new Double3D(other.x, other.y, other.z)))
                 set.add(other);
         }
@@ -418,9 +648,12 @@ public class UAV implements Steppable {
      * Send a message to the team
      */
     public void taskSendData(TaskDataPacket packet) {
+        syncTravel();
         switch(packet.getType()) {
             case ANNOUNCEMENT: {
                 this.taskPacket = new TaskDataPacket(this, packet);
+                ignite.stats.packetCopied(this.taskPacket.payload.size());
+                PacketForwardEvent.commit(this, packet.header.sender, this.taskPacket);
                 this.taskPacket.header.visitedUAVs.add(this);
 
                 Set inRange = agentsInRange(this.taskPacket.payload.UAVs);
@@ -431,6 +664,7 @@ public class UAV implements Steppable {
                     UAV recipient = it.next();
                     inRange.remove(recipient);
                     
+                    ignite.messagesSent++;
                     recipient.taskReceiveData(this.taskPacket);
                     inRange.removeAll(visited);
                 }
@@ -440,6 +674,7 @@ public class UAV implements Steppable {
 
                 if(!this.equals(packet.header.sender)) {
                     UAV recipient = packet.header.sender;
+                    ignite.messagesSent++;
                     recipient.taskReceiveData(this.taskPacket);
                 }
                 
@@ -447,6 +682,8 @@ public class UAV implements Steppable {
             }
             case AWARDING: {
                 this.taskPacket = new TaskDataPacket(this, packet);
+                ignite.stats.packetCopied(this.taskPacket.payload.size());
+                PacketForwardEvent.commit(this, packet.header.sender, this.taskPacket);
                 this.taskPacket.header.visitedUAVs.add(this);
                 
                 Set inRange = agentsInRange(this.taskPacket.payload.UAVs);
@@ -457,6 +694,7 @@ public class UAV implements Steppable {
                     UAV recipient = it.next();
                     inRange.remove(recipient);
                     
+                    ignite.messagesSent++;
                     recipient.taskReceiveData(this.taskPacket);
                     inRange.removeAll(visited);
                 }
@@ -465,6 +703,7 @@ public class UAV implements Steppable {
 
                 if(!this.equals(packet.header.sender)) {
                     UAV recipient = packet.header.sender;
+                    ignite.messagesSent++;
                     recipient.taskReceiveData(this.taskPacket);
                 }
                 
@@ -510,9 +749,12 @@ public class UAV implements Steppable {
      * Send a message to the team
      */
     public void cellSendData(CellDataPacket packet) {
+        syncTravel();
         switch(packet.getType()) {
             case ANNOUNCEMENT: {
                 this.cellPacket = new CellDataPacket(this, packet);
+                ignite.stats.packetCopied(this.cellPacket.payload.size());
+                PacketForwardEvent.commit(this, packet.header.sender, this.cellPacket);
                 this.cellPacket.header.visitedUAVs.add(this);
 
                 Set inRange = agentsInRange(this.cellPacket.payload.UAVs);
@@ -523,6 +765,7 @@ public class UAV implements Steppable {
                     UAV recipient = it.next();
                     inRange.remove(recipient);
                     
+                    ignite.messagesSent++;
                     recipient.cellReceiveData(this.cellPacket);
                     inRange.removeAll(visited);
                 }
@@ -533,6 +776,7 @@ public class UAV implements Steppable {
 
                 if(!this.equals(packet.header.sender)) {
                     UAV recipient = packet.header.sender;
+                    ignite.messagesSent++;
                     recipient.cellReceiveData(this.cellPacket);
                 }
                 
@@ -540,6 +784,8 @@ public class UAV implements Steppable {
             }
             case AWARDING: {
                 this.cellPacket = new CellDataPacket(this, packet);
+                ignite.stats.packetCopied(this.cellPacket.payload.size());
+                PacketForwardEvent.commit(this, packet.header.sender, this.cellPacket);
                 this.cellPacket.header.visitedUAVs.add(this);
 
                 Set inRange = agentsInRange(this.cellPacket.payload.UAVs);
@@ -550,6 +796,7 @@ public class UAV implements Steppable {
                     UAV recipient = it.next();
                     inRange.remove(recipient);
                     
+                    ignite.messagesSent++;
                     recipient.cellReceiveData(this.cellPacket);
                     inRange.removeAll(visited);
                 }
@@ -558,6 +805,7 @@ public class UAV implements Steppable {
 
                 if(!this.equals(packet.header.sender)) {
                     UAV recipient = packet.header.sender;
+                    ignite.messagesSent++;
                     recipient.cellReceiveData(this.cellPacket);
                 }
                 
@@ -626,6 +874,7 @@ public class UAV implements Steppable {
 
         for(Object obj : ignite.UAVs) { //count also this uav
             UAV other = (UAV) obj;
+            other.syncTravel();
             if(isInCommunicationRange(new Double3D(other.x, other.y, other.z))) {
                 Task task = other.myTask;
                 if(task != null)
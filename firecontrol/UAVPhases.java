@@ -0,0 +1,70 @@
+package sim.app.firecontrol;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * Step of all the UAVs in two phases, used instead of scheduling each UAV when Ignite.phasedUAVs is set.
+ *
+ * - decide: in parallel, each UAV takes its next action and computes its bids (the expensive part of
+ *   the auctions) from the state at the beginning of the step, reading only. Bids are only planned
+ *   for the auctions that are going to start: cell bids on the tasks of the UAVs taking a new cell,
+ *   task bids when a UAV takes a new task
+ * - commit: one UAV at a time in order of id, each one does its step on the state left by the ones before.
+ *   A UAV whose decision has been changed by them (e.g. it has been awarded a cell) takes it again,
+ *   auctions use the planned bids without the cells sold or extinguished in the meantime.
+ *
+ * The order of the commits does not depend on the schedule nor on the number of threads, runs are
+ * repeatable. UAVs move step by step, eventDrivenTravel is ignored.
+ */
+public class UAVPhases implements Steppable{
+	private static final long serialVersionUID = 1L;
+
+	private static final Comparator<UAV> BY_ID = Comparator.comparingInt(uav -> uav.id);
+
+	private UAV[] uavs = new UAV[0];
+
+	@Override
+	public void step(SimState state){
+		Ignite ignite = (Ignite) state;
+		//the UAVs may change during the run (e.g. domains of a distributed run)
+		if(uavs.length != ignite.UAVs.size()){
+			uavs = new UAV[ignite.UAVs.size()];
+		}
+		for(int i=0; i<uavs.length; i++){
+			uavs[i] = (UAV) ignite.UAVs.get(i);
+		}
+		Arrays.sort(uavs, BY_ID);
+
+		long startedAt = System.nanoTime();
+		Arrays.stream(uavs).parallel().forEach(uav -> uav.decide(ignite));
+		//bids are made only when someone is going to ask for them: task bids are on all the tasks,
+		//cell bids on the cells of a task whose agents start a cell auction
+		boolean taskAuction = false;
+		HashSet<Task> cellAuctions = new HashSet<>();
+		for(UAV uav : uavs){
+			taskAuction |= uav.plannedAction == AgentAction.SELECT_TASK && uav.taskPacket == null;
+			if(uav.plannedAction == AgentAction.SELECT_CELL){
+				cellAuctions.add(uav.myTask);
+			}
+		}
+		if(!cellAuctions.isEmpty()){
+			Arrays.stream(uavs).parallel().filter(uav -> cellAuctions.contains(uav.myTask)).forEach(uav -> uav.decideCellBid(ignite));
+		}
+		if(taskAuction && !ignite.tasks.isEmpty()){
+			Arrays.stream(uavs).parallel().forEach(uav -> uav.decideTaskBid(ignite));
+		}
+		ignite.stats.record(PhaseStats.Phase.DECIDE, startedAt);
+
+		for(UAV uav : uavs){
+			uav.step(ignite);
+		}
+		for(UAV uav : uavs){
+			uav.forgetPlan();
+		}
+	}
+}
@@ -20,14 +20,16 @@ public class WorldCell implements Steppable{
 	private static final long serialVersionUID = 1L;
 	public int x; //cell x location
 	public int y; //cell y location
-	public CellType type; //type of the cell: NORMAL, EXTINGUISHED, FIRE, BURNED, WATER
+	//the state of the cell is only read and written through its accessors,
+	//cells of an off-heap forest keep it in the forest (see OffHeapForest)
+	private CellType type; //type of the cell: NORMAL, EXTINGUISHED, FIRE, BURNED, WATER
+	private Task task; //the task this cell belongs to, if any
 
 	//params
 	public static double statusThreshold = 10E-3;
 	public static double normalStatusMultiplier = 10E-3;
 	public static double fireStatusMultiplier = 5*10E-4;
 	public static double selfIgniteThreshold = 1-10E-5;
-	public static int selfIgniteMax;
 	
 	//if this reach 0 and
 	// - the type is normal, the type becomes fire
@@ -60,15 +62,40 @@ public class WorldCell implements Steppable{
 		this.type = type;
 	}
 
+	public double getStatus(){
+		return this.status;
+	}
+
+	public void setStatus(double status){
+		this.status = status;
+	}
+
+	public boolean isEnhanced(){
+		return this.enhanced;
+	}
+
+	public void setEnhanced(boolean enhanced){
+		this.enhanced = enhanced;
+	}
+
+	public Task getTask(){
+		return this.task;
+	}
+
+	public void setTask(Task task){
+		this.task = task;
+	}
+
 	/**
 	 * Use this function to extinguish a fire over a cell.
 	 * Call it whenever a UAV is over this.
 	 */
 	public void extinguish(Ignite ignite){
-		if(this.type.equals(CellType.FIRE)){
-			this.type = CellType.EXTINGUISHED;
-			Ignite.cellsOnFire--;
-			this.status = 1;
+		if(getType().equals(CellType.FIRE)){
+			setType(CellType.EXTINGUISHED);
+			ignite.cellsOnFire--;
+			setStatus(1);
+			ignite.notifyTypeChange(this, CellType.FIRE);
 			//notify the tasks to let them compute the update
 			for(Task t : ignite.tasks){
 				if(t.notifyExtinguishedFire(this)){
@@ -89,41 +116,37 @@ public class WorldCell implements Steppable{
 	@Override
 	public void step(SimState state) {
 		Ignite ignite = (Ignite) state;
+		//draws of this cell in this step, see RandomStreams
+		long step = ignite.currentStep();
 		
-		enhanced = false;
+		setEnhanced(false);
+		CellType type = getType();
+		double status = getStatus();
 		
-		if(this.type.equals(CellType.WATER) || this.type.equals(CellType.BURNED)){
+		if(type.equals(CellType.WATER) || type.equals(CellType.BURNED)){
 			return;
-		} else if(this.type.equals(CellType.FIRE)){
+		} else if(type.equals(CellType.FIRE)){
 			//update the status
-			status -= fireStatusMultiplier*status*ignite.gaussianPDF(0, ignite.random.nextDouble(), 0.2);
+			status -= fireStatusMultiplier*status*ignite.gaussianPDF(0, ignite.streams.cell(step, x, y, RandomStreams.BURN), 0.2);
+			setStatus(status);
 
 			//propagate fire to neighbors
-			for(int i=-1; i<=1; i++){
-				for(int j=-1; j<=1; j++){
-					if(Ignite.isInBounds(new Double3D(this.x+i, this.y+j, 1))){
-						WorldCell neighbor = ((WorldCell)ignite.forest.field[this.x+i][this.y+j]);
-						if(neighbor.type.equals(CellType.NORMAL) && !neighbor.enhanced){
-							neighbor.status -= normalStatusMultiplier*ignite.gaussianPDF(0, 2*ignite.random.nextDouble(), 0.2);
-							neighbor.enhanced = true;
-                                                        
-						}
-					}
-				}
-			}
+			spreadFire(ignite);
 			//update own status
 			if(status<statusThreshold){
-				this.type = CellType.BURNED;
-				Ignite.cellsOnFire--;
-				Ignite.cellsBurned++;
+				setType(CellType.BURNED);
+				ignite.cellsOnFire--;
+				ignite.cellsBurned++;
+				ignite.notifyTypeChange(this, CellType.FIRE);
 			}
-		} else if(this.type.equals(CellType.NORMAL)){
+		} else if(type.equals(CellType.NORMAL)){
 			//check status
 			//and there is a random probably that the cell with take fire by itself
-			if(this.status < statusThreshold){
-				this.type = CellType.FIRE;
-				this.status = 1;		
-				Ignite.cellsOnFire++;
+			if(status < statusThreshold){
+				setType(CellType.FIRE);
+				setStatus(1);		
+				ignite.cellsOnFire++;
+				ignite.notifyTypeChange(this, CellType.NORMAL);
 				//notify the tasks to let them compute the update
                                 boolean notified = false;
 				for(Task t : ignite.tasks){
@@ -148,24 +171,61 @@ public class WorldCell implements Steppable{
                                                 }
                                         }
                                         
-                                        bestTask.addNewFire(this);
+                                        if(bestTask != null) {
+                                                bestTask.addNewFire(this);
+                                        } else {
+                                                //no task at all (e.g. a fire coming from a neighbor domain)
+                                                Task t = new Task(new Int2D(this.x, this.y), 0);
+                                                t.addCell(this);
+                                                ignite.tasks.add(t);
+                                        }
                                 }
-			}else if(selfIgniteMax > 0){
-				if(ignite.schedule.getSteps()!=0 &&
-						ignite.schedule.getSteps()%500==0 && 
-						ignite.random.nextDouble()>selfIgniteThreshold){
-					this.type = CellType.FIRE;
-					this.status = 1;		
-					Ignite.cellsOnFire++;
-					selfIgniteMax--;
-					//generate a new task
-					Task t = new Task(new Int2D(this.x, this.y), 0);
-					t.addCell(this);
-					ignite.tasks.add(t);
+			}else if(ignite.selfIgniteMax > 0){
+				if(ignite.currentStep()!=0 &&
+						ignite.currentStep()%500==0 && 
+						ignite.streams.cell(step, x, y, RandomStreams.IGNITE)>selfIgniteThreshold){
+					selfIgnite(ignite);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Lower the status of the normal neighbors of this cell on fire, once per step each.
+	 * Overridden by layouts that can reach the neighbors without bound checks (see MortonForest),
+	 * they must draw the same numbers (the SPREAD draw of the neighbor, see RandomStreams).
+	 */
+	void spreadFire(Ignite ignite){
+		long step = ignite.currentStep();
+		for(int i=-1; i<=1; i++){
+			for(int j=-1; j<=1; j++){
+				//only normal neighbors are read as cells (a sparse forest creates them on demand)
+				if(ignite.isInBounds(new Double3D(this.x+i, this.y+j, 1))
+						&& ignite.typeAt(this.x+i, this.y+j).equals(CellType.NORMAL)){
+					WorldCell neighbor = ignite.cell(this.x+i, this.y+j);
+					if(!neighbor.isEnhanced()){
+						neighbor.setStatus(neighbor.getStatus() - normalStatusMultiplier*ignite.gaussianPDF(0, 2*ignite.streams.cell(step, neighbor.x, neighbor.y, RandomStreams.SPREAD), 0.2));
+						neighbor.setEnhanced(true);
+					}
 				}
 			}
 		}
 	}
+
+	/*
+	 * The cell takes fire by itself and becomes a new task.
+	 */
+	void selfIgnite(Ignite ignite){
+		setType(CellType.FIRE);
+		setStatus(1);		
+		ignite.cellsOnFire++;
+		ignite.selfIgniteMax--;
+		ignite.notifyTypeChange(this, CellType.NORMAL);
+		//generate a new task
+		Task t = new Task(new Int2D(this.x, this.y), 0);
+		t.addCell(this);
+		ignite.tasks.add(t);
+	}
 	
 	@Override
 	public boolean equals(Object obj){
@@ -175,4 +235,13 @@ public class WorldCell implements Steppable{
 		WorldCell cell = (WorldCell) obj;
 		return cell.x == this.x && cell.y == this.y;
 	}
+
+	/*
+	 * Consistent with equals: cells of an off-heap forest are views, the same cell can be
+	 * represented by many objects.
+	 */
+	@Override
+	public int hashCode(){
+		return 31 * this.x + this.y;
+	}
 }
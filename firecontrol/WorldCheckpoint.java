@@ -0,0 +1,322 @@
+package sim.app.firecontrol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+
+import ec.util.MersenneTwisterFast;
+import sim.field.continuous.Continuous3D;
+import sim.field.grid.ObjectGrid2D;
+import sim.util.Bag;
+import sim.util.Double3D;
+import sim.util.Int2D;
+
+/**
+ * Compact binary checkpoint of a simulation, written and read through memory-mapped files.
+ *
+ * Instead of serializing the object graph, the forest is stored as two packed arrays
+ * (one byte per cell for type and enhanced flag, one double per cell for the status)
+ * and tasks, agents and sold cells refer to cells by their index x*height+y.
+ * The same checkpoint can be restored by many simulations, e.g. to fork what-if runs:
+ *
+ *   Ignite fork = new Ignite(seed);
+ *   fork.restoreFrom = "run.ckp";
+ *   fork.start();
+ *
+ * Layout (little endian): header, tasks and agents, state of SimState.random, cell types, cell status.
+ * Packets exchanged during auctions are not stored, only the task awarded to each agent.
+ * The state of SimState.random and of the stream of each agent is stored (cells draw counter-based
+ * numbers from the step, see RandomStreams). The order the schedule keeps its steppables in is not:
+ * steppables of the same ordering are shuffled starting from a different order, so a restored run
+ * is a run from the same state, not step by step the same as the one that wrote the checkpoint.
+ */
+public class WorldCheckpoint {
+	private static final int MAGIC = 0x46434b50; //FCKP
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 96;
+	//cells are mapped in windows of whole columns, of at most this many cells
+	private static final int WINDOW = 1 << 26;
+
+	/**
+	 * Write the current state of the simulation to the given file.
+	 * Call it between two steps (e.g. from a Steppable or when the simulation is paused).
+	 */
+	public static void save(Ignite ignite, File file) throws IOException {
+		int cells = ignite.width * ignite.height;
+
+		//size of the tasks and agents section
+		long objectBytes = 0;
+		for(Task t : ignite.tasks){
+			objectBytes += 4 + 4 + 8 + 4 + 4L * t.cells.size();
+		}
+		byte[][] uavRandom = new byte[ignite.UAVs.size()][];
+		for(int u=0; u<ignite.UAVs.size(); u++){
+			UAV uav = (UAV) ignite.UAVs.get(u);
+			uavRandom[u] = state(uav.random);
+			objectBytes += 4 + 8*3 + 1 + 8*3 + 4 + 4 + 4 + 4 + 4 + 4L * uav.soldCells.size() + 4 + uavRandom[u].length;
+		}
+		byte[] random = state(ignite.random);
+		objectBytes += 4 + random.length;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			//header, tasks and agents
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + objectBytes);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(ignite.width);
+			buffer.putInt(ignite.height);
+			buffer.putInt(ignite.depth);
+			buffer.putLong(ignite.currentStep());
+			buffer.putInt(ignite.selfIgniteMax);
+			buffer.putLong(ignite.messagesSent);
+			buffer.putLong(ignite.taskAuctions);
+			buffer.putLong(ignite.cellAuctions);
+			buffer.putInt(ignite.numFires);
+			buffer.putDouble(ignite.communicationRange);
+			buffer.putDouble(ignite.linearvelocity);
+			buffer.putInt(ignite.stepToExtinguish);
+			buffer.putInt(ignite.tasks.size());
+			buffer.putInt(ignite.UAVs.size());
+			buffer.position(HEADER_BYTES);
+
+			for(Task t : ignite.tasks){
+				buffer.putInt(t.centroid.x);
+				buffer.putInt(t.centroid.y);
+				buffer.putDouble(t.radius);
+				buffer.putInt(t.cells.size());
+				for(WorldCell cell : t.cells){
+					buffer.putInt(cell.x * ignite.height + cell.y);
+				}
+			}
+
+			for(int u=0; u<ignite.UAVs.size(); u++){
+				UAV uav = (UAV) ignite.UAVs.get(u);
+				//travelling agents store their current position and will travel again
+				uav.syncTravel();
+				buffer.putInt(uav.id);
+				buffer.putDouble(uav.x);
+				buffer.putDouble(uav.y);
+				buffer.putDouble(uav.z);
+				buffer.put((byte) (uav.target == null ? 0 : 1));
+				buffer.putDouble(uav.target == null ? 0 : uav.target.x);
+				buffer.putDouble(uav.target == null ? 0 : uav.target.y);
+				buffer.putDouble(uav.target == null ? 0 : uav.target.z);
+				buffer.putInt(uav.action == null ? -1 : uav.action.ordinal());
+				buffer.putInt(uav.myTask == null ? -1 : ignite.tasks.indexOf(uav.myTask));
+				buffer.putInt(awardedTask(ignite, uav));
+				buffer.putInt(uav.startedToExtinguishAt);
+				buffer.putInt(uav.soldCells.size());
+				for(WorldCell cell : uav.soldCells){
+					buffer.putInt(cell.x * ignite.height + cell.y);
+				}
+				buffer.putInt(uavRandom[u].length);
+				buffer.put(uavRandom[u]);
+			}
+			buffer.putInt(random.length);
+			buffer.put(random);
+			buffer.force();
+
+			//cells, one window of columns at a time
+			long typesAt = HEADER_BYTES + objectBytes;
+			long statusAt = typesAt + cells;
+			int columns = Math.max(1, WINDOW / ignite.height);
+			byte[] typeColumn = new byte[ignite.height];
+			double[] statusColumn = new double[ignite.height];
+			for(int from=0; from<ignite.width; from+=columns){
+				int count = Math.min(columns, ignite.width - from);
+				long first = (long) from * ignite.height;
+				long size = (long) count * ignite.height;
+				MappedByteBuffer types = map(channel, FileChannel.MapMode.READ_WRITE, typesAt + first, size);
+				MappedByteBuffer status = map(channel, FileChannel.MapMode.READ_WRITE, statusAt + 8*first, 8*size);
+				DoubleBuffer statusValues = status.asDoubleBuffer();
+				for(int w=from; w<from+count; w++){
+					for(int h=0; h<ignite.height; h++){
+						WorldCell cell = ignite.store != null ? ignite.store.peek(w, h) : (WorldCell) ignite.forest.field[w][h];
+						if(cell == null){
+							//untouched cell of a sparse forest
+							typeColumn[h] = (byte) ignite.store.type(w, h).ordinal();
+							statusColumn[h] = 1;
+						} else {
+							typeColumn[h] = (byte) (cell.getType().ordinal() | (cell.isEnhanced() ? 0x80 : 0));
+							statusColumn[h] = cell.getStatus();
+						}
+					}
+					types.put(typeColumn);
+					statusValues.put(statusColumn);
+				}
+				types.force();
+				status.force();
+			}
+		}
+	}
+
+	/**
+	 * Replace world, tasks and agents of the simulation with the ones in the given file.
+	 * Called by Ignite.start when Ignite.restoreFrom is set, scheduling is left to Ignite.
+	 * With a sparse or off-heap forest (see Ignite.createStore) untouched NORMAL cells are left to the store.
+	 */
+	public static void restore(Ignite ignite, File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				throw new IOException(file + " is not a checkpoint");
+			}
+			ignite.width = buffer.getInt();
+			ignite.height = buffer.getInt();
+			ignite.depth = buffer.getInt();
+			ignite.stepOffset = buffer.getLong();
+			ignite.selfIgniteMax = buffer.getInt();
+			ignite.messagesSent = buffer.getLong();
+			ignite.taskAuctions = buffer.getLong();
+			ignite.cellAuctions = buffer.getLong();
+			ignite.numFires = buffer.getInt();
+			ignite.communicationRange = buffer.getDouble();
+			ignite.linearvelocity = buffer.getDouble();
+			ignite.stepToExtinguish = buffer.getInt();
+			int numTasks = buffer.getInt();
+			ignite.numUAVs = buffer.getInt();
+
+			int width = ignite.width;
+			int height = ignite.height;
+			int cells = width * height;
+			long objectBytes = channel.size() - HEADER_BYTES - 9L*cells;
+
+			//cells first, tasks and agents refer to them
+			ignite.store = ignite.createStore(width, height);
+			ignite.forest = ignite.store != null ? null : new ObjectGrid2D(width, height);
+			CellType[] types = CellType.values();
+			long typesAt = HEADER_BYTES + objectBytes;
+			long statusAt = typesAt + cells;
+			int columns = Math.max(1, WINDOW / height);
+			byte[] typeColumn = new byte[height];
+			double[] statusColumn = new double[height];
+			for(int from=0; from<width; from+=columns){
+				int count = Math.min(columns, width - from);
+				long first = (long) from * height;
+				long size = (long) count * height;
+				MappedByteBuffer typeValues = map(channel, FileChannel.MapMode.READ_ONLY, typesAt + first, size);
+				DoubleBuffer statusValues = map(channel, FileChannel.MapMode.READ_ONLY, statusAt + 8*first, 8*size).asDoubleBuffer();
+				for(int w=from; w<from+count; w++){
+					typeValues.get(typeColumn);
+					statusValues.get(statusColumn);
+					for(int h=0; h<height; h++){
+						byte b = typeColumn[h];
+						CellType type = types[b & 0x7f];
+						WorldCell cell;
+						if(ignite.store == null){
+							cell = new WorldCell(w, h, type);
+							ignite.forest.field[w][h] = cell;
+						} else if(b == CellType.NORMAL.ordinal() && statusColumn[h] == 1){
+							//untouched forest, left to the store
+							continue;
+						} else {
+							cell = ignite.store.get(w, h);
+							cell.setType(type);
+						}
+						cell.setEnhanced((b & 0x80) != 0);
+						cell.setStatus(statusColumn[h]);
+					}
+				}
+			}
+
+			buffer = map(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES, objectBytes);
+			ignite.tasks = new LinkedList<>();
+			for(int t=0; t<numTasks; t++){
+				Task task = new Task(new Int2D(buffer.getInt(), buffer.getInt()), 0);
+				task.radius = buffer.getDouble();
+				int size = buffer.getInt();
+				for(int c=0; c<size; c++){
+					task.addCell(cell(ignite, buffer.getInt()));
+				}
+				ignite.tasks.add(task);
+			}
+
+			ignite.air = new Continuous3D(1, width, height, ignite.depth);
+			ignite.UAVs = new Bag();
+			AgentAction[] actions = AgentAction.values();
+			for(int u=0; u<ignite.numUAVs; u++){
+				int id = buffer.getInt();
+				Double3D location = new Double3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+				UAV uav = new UAV(id, location, ignite);
+				boolean hasTarget = buffer.get() != 0;
+				Double3D target = new Double3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+				uav.target = hasTarget ? target : null;
+				int action = buffer.getInt();
+				uav.action = action == -1 ? null : actions[action];
+				int myTask = buffer.getInt();
+				uav.myTask = myTask == -1 ? null : ignite.tasks.get(myTask);
+				int awarded = buffer.getInt();
+				uav.startedToExtinguishAt = buffer.getInt();
+				int sold = buffer.getInt();
+				for(int c=0; c<sold; c++){
+					uav.soldCells.add(cell(ignite, buffer.getInt()));
+				}
+				restoreState(uav.random, buffer);
+				ignite.UAVs.add(uav);
+				ignite.air.setObjectLocation(uav, location);
+
+				//the outcome of the last task auction, still used by selectTask
+				if(awarded != -2){
+					uav.taskPacket = new TaskDataPacket(uav, PacketType.EXPEDITING, ignite.UAVs, null);
+					if(awarded >= 0){
+						uav.taskPacket.payload.awards.add(new TaskAward(uav, ignite.tasks.get(awarded)));
+					}
+				}
+			}
+			restoreState(ignite.random, buffer);
+		}
+	}
+
+	/*
+	 * Index of the task awarded to the agent by its last task auction,
+	 * -1 if none and -2 if the agent has no auction outcome at all.
+	 */
+	private static int awardedTask(Ignite ignite, UAV uav){
+		if(uav.taskPacket == null){
+			return -2;
+		}
+		for(TaskAward award : uav.taskPacket.payload.awards){
+			if(award.bidder == uav){
+				return ignite.tasks.indexOf(award.award);
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * State of a generator, as written by MersenneTwisterFast.writeState.
+	 */
+	private static byte[] state(MersenneTwisterFast random) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)){
+			random.writeState(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void restoreState(MersenneTwisterFast random, MappedByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		random.readState(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static WorldCell cell(Ignite ignite, int index){
+		return ignite.cell(index / ignite.height, index % ignite.height);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(mode, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+}
@@ -0,0 +1,283 @@
+package sim.app.firecontrol;
+
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import ec.util.MersenneTwisterFast;
+import sim.field.grid.ObjectGrid2D;
+import sim.util.Int2D;
+
+/**
+ * Generation of the forest, its lakes and its fires (with their tasks).
+ *
+ * - classic, the original generator: lakes and fires grow ring by ring around their
+ *   center. Only the cells that can actually become water (fire) are visited and each
+ *   of them draws as many times as the rings that cover it, so the outcome has the same
+ *   distribution of the ring by ring growth without revisiting the whole square at
+ *   every ring, and cells are reused instead of being replaced.
+ * - procedural, lakes from a fractal value noise computed column by column in parallel,
+ *   fires placed as in the classic generator. Each cell only depends on the seed and
+ *   on its coordinates, so the world is the same whatever the number of threads.
+ *
+ * Both run in O(cells). The startup time for different sizes is printed by main:
+ *   java -Xmx6g sim.app.firecontrol.WorldGenerator 60,250,1000,4000,8000
+ */
+public class WorldGenerator {
+	//a lake cell is placed if the gaussianPDF of its distance is above this
+	private static final double LAKE_THRESHOLD = 0.25;
+	//a fire cell is placed if the gaussianPDF of its distance is above this
+	private static final double FIRE_THRESHOLD = 0.85;
+	private static final double VARIANCE = 3;
+
+	/**
+	 * Trees everywhere, two lakes and Ignite.numFires fires.
+	 */
+	public static void classic(Ignite ignite){
+		MersenneTwisterFast random = ignite.random;
+		fillWithTrees(ignite);
+
+		//generate lakes
+		int lakes = 2;
+		for(int l=0; l<lakes; l++){
+			//try to find a center for the lake
+			Int2D lakeCenter;
+			int maxTries = ignite.width*ignite.height;
+			do{
+				lakeCenter = new Int2D(random.nextInt(ignite.width), random.nextInt(ignite.height));
+				maxTries--;
+			}while(ignite.typeAt(lakeCenter.x, lakeCenter.y).equals(CellType.WATER) && maxTries>=0);
+
+			//break if not able to find a center after some time
+			if(maxTries < 0){
+				break;
+			}
+
+			ignite.cell(lakeCenter.x, lakeCenter.y).setType(CellType.WATER);
+			int rings = rings(ignite, random);
+			paint(ignite, random, lakeCenter, rings, LAKE_THRESHOLD, CellType.WATER, null);
+		}
+
+		placeFires(ignite, random);
+	}
+
+	/**
+	 * Trees everywhere, lakes where the noise is below Ignite.waterLevel and Ignite.numFires fires.
+	 * The noise is computed at the coordinates of the whole world (see Ignite.originX), so the domains
+	 * of a distributed run make up the same landscape.
+	 */
+	public static void procedural(final Ignite ignite){
+		final int width = ignite.width;
+		final int height = ignite.height;
+		//the domains of a distributed run have seeds of their own, their landscape comes from the one of the world
+		final long seed = RandomStreams.mix(ignite.worker == null ? ignite.seed() : ignite.worker.worldSeed);
+		final double scale = ignite.lakeScale;
+		final double waterLevel = ignite.waterLevel;
+
+		ignite.store = ignite.createStore(width, height);
+		if(ignite.store != null){
+			//only water is written, the store is full of trees
+			ignite.forest = null;
+			for(int w=0; w<width; w++){
+				for(int h=0; h<height; h++){
+					if(fractalNoise(seed, (ignite.originX + w) / scale, h / scale) < waterLevel){
+						ignite.store.set(w, h, CellType.WATER);
+					}
+				}
+			}
+		} else {
+			ignite.forest = new ObjectGrid2D(width, height);
+			final Object[][] field = ignite.forest.field;
+			IntStream.range(0, width).parallel().forEach(w -> {
+				Object[] column = field[w];
+				for(int h=0; h<height; h++){
+					double n = fractalNoise(seed, (ignite.originX + w) / scale, h / scale);
+					column[h] = new WorldCell(w, h, n < waterLevel ? CellType.WATER : CellType.NORMAL);
+				}
+			});
+		}
+
+		placeFires(ignite, ignite.random);
+	}
+
+	private static void fillWithTrees(Ignite ignite){
+		ignite.store = ignite.createStore(ignite.width, ignite.height);
+		if(ignite.store != null){
+			//the store is already full of trees
+			ignite.forest = null;
+			return;
+		}
+		ignite.forest = new ObjectGrid2D(ignite.width, ignite.height);
+		for(int w=0; w<ignite.width; w++){
+			Object[] column = ignite.forest.field[w];
+			for(int h=0; h<ignite.height; h++){
+				column[h] = new WorldCell(w, h, CellType.NORMAL);
+			}
+		}
+	}
+
+	/*
+	 * Fires start on cells that are neither on fire nor water, each of them gets its task.
+	 */
+	private static void placeFires(Ignite ignite, MersenneTwisterFast random){
+		ignite.tasks = new LinkedList<>();
+		for(int l=0; l<ignite.numFires; l++){
+			//try to find a center for the fire
+			Int2D fireCenter;
+			int maxTries = ignite.width*ignite.height;
+			CellType type;
+			do{
+				fireCenter = new Int2D(random.nextInt(ignite.width), random.nextInt(ignite.height));
+				type = ignite.typeAt(fireCenter.x, fireCenter.y);
+				maxTries--;
+			}while((type.equals(CellType.FIRE) || type.equals(CellType.WATER)) && maxTries>=0);
+
+			//break if not able to find a center after some time
+			if(maxTries < 0){
+				break;
+			}
+
+			//place the center of the fire and generate the task for global knowledge
+			WorldCell cell = ignite.cell(fireCenter.x, fireCenter.y);
+			cell.setType(CellType.FIRE);
+			Task t = new Task(new Int2D(fireCenter.x, fireCenter.y), 0);
+			t.addCell(cell);
+			ignite.tasks.add(t);
+
+			int rings = rings(ignite, random);
+			paint(ignite, random, fireCenter, rings, FIRE_THRESHOLD, CellType.FIRE, t);
+		}
+	}
+
+	/*
+	 * Number of rings a lake or a fire grows for: a ring is added while its radius
+	 * is not above two random draws (as in the original ring by ring growth).
+	 */
+	private static int rings(Ignite ignite, MersenneTwisterFast random){
+		int radius = 1;
+		while(radius<=random.nextInt(ignite.width)+2 && radius<=random.nextInt(ignite.height)+2){
+			radius++;
+		}
+		return radius - 1;
+	}
+
+	/*
+	 * A cell at distance d is placed, at each ring covering it, with probability
+	 * P(gaussianPDF(d, mean, VARIANCE) > threshold) where mean is in (-1, 1): cells
+	 * farther than reach can never be placed, the others draw once per covering ring
+	 * until they succeed. Cells already on fire keep their task.
+	 */
+	private static void paint(Ignite ignite, MersenneTwisterFast random, Int2D center, int rings,
+			double threshold, CellType type, Task task){
+		double reach = 1 + VARIANCE * Math.sqrt(2 * Math.log(1 / threshold));
+		int r = (int) Math.min(rings, Math.ceil(reach));
+		for(int i=-r; i<=r; i++){
+			for(int j=-r; j<=r; j++){
+				int x = center.x + i;
+				int y = center.y + j;
+				double d = Math.sqrt(i*i+j*j);
+				if((i == 0 && j == 0) || d >= reach || x < 0 || y < 0 || x >= ignite.width || y >= ignite.height){
+					continue;
+				}
+				CellType current = ignite.typeAt(x, y);
+				if(current.equals(CellType.FIRE) || current.equals(type)){
+					continue;
+				}
+				//rings from max(|i|,|j|) to rings cover this cell
+				int draws = rings - Math.max(Math.abs(i), Math.abs(j)) + 1;
+				for(int k=0; k<draws; k++){
+					double p = ignite.gaussianPDF(d, (random.nextInt(3)-1)*random.nextDouble(), VARIANCE);
+					if(p > threshold){
+						WorldCell cell = ignite.cell(x, y);
+						cell.setType(type);
+						if(task != null){
+							task.addNewFire(cell);
+						}
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Fractal value noise in [0, 1): three octaves of smoothly interpolated random values
+	 * on an integer lattice, the value at a lattice point only depends on seed and coordinates.
+	 */
+	static double fractalNoise(long seed, double x, double y){
+		double sum = 0;
+		double amplitude = 1;
+		double norm = 0;
+		for(int octave=0; octave<3; octave++){
+			sum += amplitude * valueNoise(seed + octave, x, y);
+			norm += amplitude;
+			amplitude *= 0.5;
+			x *= 2;
+			y *= 2;
+		}
+		return sum / norm;
+	}
+
+	private static double valueNoise(long seed, double x, double y){
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		double fx = x - x0;
+		double fy = y - y0;
+		double u = fx * fx * (3 - 2 * fx);
+		double v = fy * fy * (3 - 2 * fy);
+		double a = lattice(seed, x0, y0);
+		double b = lattice(seed, x0 + 1, y0);
+		double c = lattice(seed, x0, y0 + 1);
+		double d = lattice(seed, x0 + 1, y0 + 1);
+		return (a + (b - a) * u) * (1 - v) + (c + (d - c) * u) * v;
+	}
+
+	private static double lattice(long seed, int x, int y){
+		long h = RandomStreams.mix(seed + x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL);
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Print the time needed to generate worlds of the given sizes (comma separated)
+	 * with both generators, and the time of the whole Ignite.start.
+	 */
+	public static void main(String[] args){
+		int[] sizes = args.length > 0 ? BatchRunner.parseInts(args[0]) : new int[]{60, 250, 1000, 4000, 8000};
+		System.out.println("size,generator,generateMillis,startMillis");
+		for(int size : sizes){
+			for(boolean procedural : new boolean[]{false, true}){
+				String generated = "n/a";
+				String started = "n/a";
+				try {
+					Ignite ignite = new Ignite(1);
+					ignite.width = size;
+					ignite.height = size;
+					ignite.proceduralWorld = procedural;
+					long t = System.nanoTime();
+					if(procedural){
+						procedural(ignite);
+					} else {
+						classic(ignite);
+					}
+					generated = String.format(Locale.US, "%.1f", (System.nanoTime() - t) / 1e6);
+					ignite = null;
+
+					Ignite run = new Ignite(1);
+					run.width = size;
+					run.height = size;
+					run.proceduralWorld = procedural;
+					run.writeReport = false;
+					t = System.nanoTime();
+					run.start();
+					started = String.format(Locale.US, "%.1f", (System.nanoTime() - t) / 1e6);
+					run.finish();
+				} catch (OutOfMemoryError e) {
+					//report what fits in this heap
+				}
+				System.out.println(size + "," + (procedural ? "procedural" : "classic") + "," + generated + "," + started);
+				System.gc();
+			}
+		}
+		System.exit(0);
+	}
+}
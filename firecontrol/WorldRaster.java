@@ -0,0 +1,161 @@
+package sim.app.firecontrol;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import sim.field.grid.ObjectGrid2D;
+
+/**
+ * Import and export of the forest as a raw raster, to run on real landscapes.
+ *
+ * Format (little endian): a 32 bytes header (magic FCRS, version, width, height, mode)
+ * followed by one byte per cell, column by column (index x*height+y as ObjectGrid2D.field).
+ * Two modes:
+ * - TYPE, the byte is the ordinal of the CellType of the cell
+ * - FUEL, the byte is a fuel class: 0 is not burnable (WATER), anything else is NORMAL forest.
+ *   Fuel is not modelled by the simulation, only burnable and not burnable areas are kept.
+ *
+ * The file is memory-mapped and read one window of columns at a time with bulk gets.
+ * Fires in the raster become tasks, one per group of connected cells on fire.
+ * To run on a raster:
+ *
+ *   Ignite ignite = new Ignite(seed);
+ *   ignite.rasterFrom = "landscape.raster";
+ *   ignite.start();
+ */
+public class WorldRaster {
+	public static final int TYPE = 0;
+	public static final int FUEL = 1;
+
+	private static final int MAGIC = 0x46435253; //FCRS
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	//cells are mapped in windows of whole columns, of at most this many cells
+	private static final int WINDOW = 1 << 28;
+
+	/**
+	 * Write the type of each cell of the forest of the simulation.
+	 */
+	public static void save(Ignite ignite, File file) throws IOException {
+		int width = ignite.width;
+		int height = ignite.height;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(width);
+			header.putInt(height);
+			header.putInt(TYPE);
+			header.force();
+
+			byte[] column = new byte[height];
+			int columns = Math.max(1, WINDOW / height);
+			for(int from=0; from<width; from+=columns){
+				int count = Math.min(columns, width - from);
+				MappedByteBuffer cells = map(channel, FileChannel.MapMode.READ_WRITE,
+						HEADER_BYTES + (long) from * height, (long) count * height);
+				for(int w=from; w<from+count; w++){
+					for(int h=0; h<height; h++){
+						column[h] = (byte) ignite.typeAt(w, h).ordinal();
+					}
+					cells.put(column);
+				}
+				cells.force();
+			}
+		}
+	}
+
+	/**
+	 * Replace the forest and the tasks of the simulation with the ones in the raster,
+	 * Ignite.width and Ignite.height become the ones of the raster.
+	 * With a sparse or off-heap forest (see Ignite.createStore) only the cells that are not NORMAL are written.
+	 * Called by Ignite.start when Ignite.rasterFrom is set.
+	 */
+	public static void load(Ignite ignite, File file) throws IOException {
+		load(ignite, file, 0, -1);
+	}
+
+	/**
+	 * Same as load(ignite, file) with only the given columns of the raster, starting from fromColumn
+	 * (all the columns up to the last one if columns is -1). Used by the domains of a distributed run,
+	 * see DomainWorker: the forest of the simulation is as wide as the columns loaded.
+	 */
+	public static void load(Ignite ignite, File file, int fromColumn, int columns) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION){
+				throw new IOException(file + " is not a raster");
+			}
+			int rasterWidth = header.getInt();
+			int height = header.getInt();
+			int mode = header.getInt();
+			if(channel.size() < HEADER_BYTES + (long) rasterWidth * height){
+				throw new IOException(file + " is truncated");
+			}
+			int width = columns == -1 ? rasterWidth - fromColumn : columns;
+			if(fromColumn < 0 || width <= 0 || fromColumn + width > rasterWidth){
+				throw new IOException(file + " has no columns " + fromColumn + "-" + (fromColumn + width - 1));
+			}
+
+			CellType[] types = CellType.values();
+			ForestStore store = ignite.createStore(width, height);
+			ObjectGrid2D forest = store != null ? null : new ObjectGrid2D(width, height);
+			byte[] column = new byte[height];
+			int window = Math.max(1, WINDOW / height);
+			for(int from=0; from<width; from+=window){
+				int count = Math.min(window, width - from);
+				MappedByteBuffer cells = map(channel, FileChannel.MapMode.READ_ONLY,
+						HEADER_BYTES + (long) (fromColumn + from) * height, (long) count * height);
+				for(int w=from; w<from+count; w++){
+					cells.get(column);
+					for(int h=0; h<height; h++){
+						int value = column[h] & 0xff;
+						CellType type;
+						if(mode == FUEL){
+							type = value == 0 ? CellType.WATER : CellType.NORMAL;
+						} else if(value < types.length){
+							type = types[value];
+						} else {
+							throw new IOException(file + " has an unknown cell type " + value + " at " + (fromColumn + w) + "," + h);
+						}
+						if(forest != null){
+							forest.field[w][h] = new WorldCell(w, h, type);
+						} else {
+							store.set(w, h, type);
+						}
+					}
+				}
+			}
+
+			ignite.width = width;
+			ignite.height = height;
+			ignite.forest = forest;
+			ignite.store = store;
+			ignite.tasks = TaskLabeller.label(ignite);
+		}
+	}
+
+	/**
+	 * @return the width and the height of the raster, reading its header only
+	 */
+	public static int[] size(File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION){
+				throw new IOException(file + " is not a raster");
+			}
+			return new int[]{header.getInt(), header.getInt()};
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(mode, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+}
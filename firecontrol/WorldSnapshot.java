@@ -0,0 +1,29 @@
+package sim.app.firecontrol;
+
+/**
+ * Copy of the state of the world to be drawn, published by a SnapshotPublisher through SnapshotBuffers.
+ * Snapshots are recycled by the publisher: the fields are only written by it, while the snapshot
+ * is neither the latest one nor held by a reader (see SnapshotBuffers.acquire and release).
+ */
+public class WorldSnapshot {
+	public final int width;
+	public final int height;
+	//ordinal of the CellType of each cell, indexed as x*height+y
+	public final byte[] types;
+
+	public long step;
+	public int cellsOnFire;
+	public int cellsBurned;
+
+	//position of the UAVs, only the first uavs are valid
+	public int uavs;
+	public int[] uavIds = new int[0];
+	public double[] uavX = new double[0];
+	public double[] uavY = new double[0];
+
+	public WorldSnapshot(int width, int height){
+		this.width = width;
+		this.height = height;
+		this.types = new byte[width * height];
+	}
+}